@@ -11,7 +11,28 @@ public class BasicOrder {
     private final int price;
     private final OrderSide side;
 
+    /**
+     * Logical time the order expires at, 0 if the order is good till cancel
+     */
+    private final long expireAt;
+
+    /**
+     * Links of the {@link OrdersBook} price level the order rests at, maintained by the level
+     */
+    BasicOrder levelPrev;
+    BasicOrder levelNext;
+
+    /**
+     * Links of the {@link TimingWheel} slot the order is scheduled in, maintained by the wheel
+     */
+    BasicOrder wheelPrev;
+    BasicOrder wheelNext;
+
     public BasicOrder(int price, int size, OrderSide side) {
+        this(price, size, side, 0);
+    }
+
+    public BasicOrder(int price, int size, OrderSide side, long expireAt) {
         if (price <= 0)
             throw new IllegalArgumentException("Price should be positive.");
         this.price = price;
@@ -19,6 +40,9 @@ public class BasicOrder {
             throw new IllegalArgumentException("Size should be positive.");
         this.size = size;
         this.side = side;
+        if (expireAt < 0)
+            throw new IllegalArgumentException("Expiry time should not be negative.");
+        this.expireAt = expireAt;
     }
 
     public int getPrice() {
@@ -40,4 +64,11 @@ public class BasicOrder {
         return side;
     }
 
+    /**
+     * @return logical time the order expires at, 0 if the order is good till cancel
+     */
+    public long getExpireAt() {
+        return expireAt;
+    }
+
 }
@@ -2,13 +2,26 @@ package com.bookmap.ordermanagement;
 
 import com.bookmap.util.StopWatch;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import static java.lang.Boolean.parseBoolean;
 import static java.lang.System.getProperty;
@@ -20,37 +33,272 @@ public class BasicOrderManagement {
 
     public static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
 
-    private static final String  PRICE_FORMAT_IS_INVALID_FMT      = "Price format is invalid - \"%s\"";
-    private static final String  SIZE_FORMAT_IS_INVALID_FMT       = "Size format is invalid - \"%s\"";
-    private static final boolean SKIP_INVALID_OPERATIONS          = parseBoolean(getProperty("skipInvalidOperations",
-                                                                                             "true"));
-    private static final Level   INVALID_OPERATIONS_LOGGING_LEVEL = SKIP_INVALID_OPERATIONS
-                                                                            ? Level.WARNING
-                                                                            : Level.SEVERE;
+    private static final boolean SKIP_INVALID_OPERATIONS = parseBoolean(getProperty("skipInvalidOperations", "true"));
+    private static final int     PARALLELISM             = Integer.getInteger("parallelism",
+                                                                              Runtime.getRuntime()
+                                                                                     .availableProcessors());
+    private static final int     COALESCE_WINDOW         = Integer.getInteger("coalesceWindow", 0);
+    private static final String  BOOK_MAP_FILE           = getProperty("bookMapFile");
+    private static final int     BOOK_MAP_DEPTH          = Integer.getInteger("bookMapDepth", 10);
+    private static final long    MISSING_NUMBER          = Long.MIN_VALUE;
+    private static final long    INVALID_NUMBER          = Long.MIN_VALUE + 1;
+    private static final long    MAX_TIMESTAMP           = 999_999_999_999_999_999L;
+    private static final byte[]  LINE_SEPARATOR          = System.lineSeparator()
+                                                                 .getBytes(StandardCharsets.US_ASCII);
 
-    private static OrdersBook ordersBook;
+    /**
+     * Order book commands are applied to
+     */
+    private final OrdersBook  ordersBook;
+
+    /**
+     * Stream query results are printed to
+     */
+    private final PrintStream out;
+
+    /**
+     * Count of dispatched commands per outcome
+     */
+    private final long[] resultCounts = new long[CommandResult.values().length];
+
+    private long commandsCount;
+
+    /**
+     * Publisher the book is mirrored to after every mutation, if any
+     */
+    private MappedBookPublisher publisher;
+
+    /**
+     * Command line being dispatched and bounds of its current field
+     */
+    private String line;
+    private int    fieldFrom;
+    private int    fieldTo;
+
+    /**
+     * Query result being formatted, reused so that printing numeric results doesn't allocate
+     */
+    private final byte[] outputLine = new byte[128];
+    private       int    outputLength;
+
+    /**
+     * Arguments of the command being dispatched, reported to the flight recorder
+     */
+    private String commandSide;
+    private long   commandPrice;
+    private long   commandSize;
+
+    public BasicOrderManagement( OrdersBook ordersBook, PrintStream out ) {
+        this.ordersBook = ordersBook;
+        this.out = out;
+    }
+
+    /**
+     * Mirrors the book to the @publisher after every accepted update or operation
+     *
+     * @param publisher publisher of the book, or null to stop publishing
+     */
+    public void setPublisher( MappedBookPublisher publisher ) {
+        this.publisher = publisher;
+    }
 
     public static void main( String[] args ) {
         if (args.length == 0) {
-            LOGGER.severe("Specify an input filename");
+            LOGGER.severe("Specify an input filename, a few filenames or a directory");
             System.exit(1);
         }
+        if (args.length > 1 || Files.isDirectory(Paths.get(args[0]))) {
+            replayBatch(args);
+            BookEvents.close();
+            return;
+        }
         int runs = 1;
         double[] durations = new double[runs];
         final StopWatch timer = new StopWatch();
         for (int i = 0; i < runs; i++) {
-            try (BufferedReader br = Files.newBufferedReader(Paths.get(args[0]))) {
-                ordersBook = new OrdersBook(SKIP_INVALID_OPERATIONS);
-                br.lines().forEach(BasicOrderManagement::dispatchCommand);
+            try (MappedBookPublisher publisher = BOOK_MAP_FILE == null
+                                                 ? null
+                                                 : new MappedBookPublisher(Paths.get(BOOK_MAP_FILE), BOOK_MAP_DEPTH)) {
+                replay(Paths.get(args[0]), System.out, publisher);
             } catch (Exception e) {
                 LOGGER.log(Level.SEVERE, "File processing terminated due to invalid command - {0}", e.getMessage());
             }
             durations[i] = timer.elapsed();
             timer.reset();
         }
+        BookEvents.close();
         printStat(durations);
     }
 
+    /**
+     * Replays commands of the @input file into a new Order Book
+     *
+     * @param input     commands file
+     * @param out       stream query results are printed to
+     * @param publisher publisher the book is mirrored to, or null
+     * @return count of processed commands
+     */
+    static long replay( Path input, PrintStream out, MappedBookPublisher publisher ) throws IOException {
+        if (COALESCE_WINDOW > 0) return replayCoalesced(input, out, publisher);
+        final BasicOrderManagement dispatcher = new BasicOrderManagement(new OrdersBook(SKIP_INVALID_OPERATIONS), out);
+        dispatcher.setPublisher(publisher);
+        long commands = 0;
+        try (BufferedReader br = Files.newBufferedReader(input)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                dispatcher.dispatchCommand(line);
+                commands++;
+            }
+        }
+        dispatcher.printRejections(input);
+        return commands;
+    }
+
+    /**
+     * Replays commands of the @input file through the {@link CommandCoalescer} in windows
+     * of "coalesceWindow" commands
+     *
+     * @param input     commands file
+     * @param out       stream query results are printed to
+     * @param publisher publisher the book is mirrored to, or null
+     * @return count of processed commands
+     */
+    private static long replayCoalesced( Path input, PrintStream out, MappedBookPublisher publisher )
+            throws IOException
+    {
+        final CommandCoalescer coalescer = new CommandCoalescer(new OrdersBook(SKIP_INVALID_OPERATIONS), out);
+        coalescer.getDispatcher().setPublisher(publisher);
+        final String[] window = new String[COALESCE_WINDOW];
+        final CommandResult[] results = new CommandResult[COALESCE_WINDOW];
+        long commands = 0;
+        try (BufferedReader br = Files.newBufferedReader(input)) {
+            int count;
+            do {
+                count = 0;
+                String line;
+                while (count < window.length && (line = br.readLine()) != null) {
+                    window[count++] = line;
+                }
+                coalescer.dispatchWindow(window, count, results);
+                commands += count;
+            } while (count == window.length);
+        }
+        coalescer.getDispatcher().printRejections(input);
+        return commands;
+    }
+
+    /**
+     * Replays each of independent commands files into its own Order Book on a work-stealing pool.
+     * Query results of every file are written to "&lt;filename&gt;.out" in the "outputDir" directory,
+     * which defaults to the directory of the input file.
+     *
+     * @param args filenames or directories of the commands files
+     */
+    private static void replayBatch( String[] args ) {
+        final List<Path> inputs;
+        try {
+            inputs = listInputs(args);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to list input files - {0}", e.getMessage());
+            return;
+        }
+        final String outputDir = getProperty("outputDir");
+        final double[] durations;
+        try {
+            durations = replayBatch(inputs, outputDir == null ? null : Paths.get(outputDir));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, "Batch is not replayed - {0}", e.getMessage());
+            return;
+        }
+        LOGGER.log(Level.INFO, "{0} of {1} files replayed", new Object[] { durations.length, inputs.size() });
+        if (durations.length > 0) printStat(durations);
+    }
+
+    /**
+     * Replays the @inputs in parallel, query results of every file are written to "&lt;filename&gt;.out"
+     * in the @outputDir
+     *
+     * @param inputs    commands files
+     * @param outputDir directory of the output files, or null to write them next to the inputs
+     * @return CPU time spent on each of the successfully replayed files in seconds
+     * @throws IllegalArgumentException if two inputs would be written to the same output file,
+     *                                  in which case nothing is replayed
+     */
+    static double[] replayBatch( List<Path> inputs, Path outputDir ) {
+        final Map<Path, Path> inputsByOutput = new LinkedHashMap<>();
+        for (Path input : inputs) {
+            final Path parent = outputDir != null ? outputDir : input.toAbsolutePath().getParent();
+            final Path output = parent.resolve(input.getFileName() + ".out").toAbsolutePath().normalize();
+            final Path previous = inputsByOutput.putIfAbsent(output, input);
+            if (previous != null) {
+                throw new IllegalArgumentException(String.format("%s and %s would both be written to %s",
+                                                                 previous, input, output));
+            }
+        }
+        final ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        final List<ForkJoinTask<Double>> tasks = new ArrayList<>(inputs.size());
+        inputsByOutput.forEach(( output, input ) -> tasks.add(pool.submit(() -> replayToFile(input, output))));
+        double[] durations = tasks.stream()
+                                  .mapToDouble(ForkJoinTask::join)
+                                  .filter(duration -> duration >= 0)
+                                  .toArray();
+        pool.shutdown();
+        return durations;
+    }
+
+    private static List<Path> listInputs( String[] args ) throws IOException {
+        final List<Path> inputs = new ArrayList<>();
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    files.filter(Files::isRegularFile)
+                         .filter(file -> !file.getFileName().toString().endsWith(".out"))
+                         .sorted()
+                         .forEach(inputs::add);
+                }
+            } else {
+                inputs.add(path);
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * Replays the single @input file of the batch and reports its statistics
+     *
+     * @param input  commands file
+     * @param output file query results are written to
+     * @return CPU time spent on the file in seconds, or -1 if processing failed
+     */
+    private static double replayToFile( Path input, Path output ) {
+        final StopWatch timer = new StopWatch();
+        try (PrintStream out = new PrintStream(new BufferedOutputStream(Files.newOutputStream(output)))) {
+            long commands = replay(input, out, null);
+            double duration = timer.elapsed();
+            LOGGER.log(Level.INFO, "{0}: {1} commands in {2,number,#.###} s",
+                       new Object[] { input, commands, duration });
+            return duration;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Processing of {0} terminated - {1}", new Object[] { input, e.getMessage() });
+            return -1;
+        }
+    }
+
+    /**
+     * Prints count of rejected commands per reason
+     *
+     * @param input commands file
+     */
+    private void printRejections( Path input ) {
+        for (CommandResult result : CommandResult.values()) {
+            if (result.isRejected() && resultCounts[result.ordinal()] > 0) {
+                LOGGER.log(Level.INFO, "{0}: {1} commands rejected - {2}",
+                           new Object[] { input, resultCounts[result.ordinal()], result.getDescription() });
+            }
+        }
+    }
+
     /**
      * Prints simple statistics about execution time
      *
@@ -64,142 +312,322 @@ public class BasicOrderManagement {
     }
 
     /**
-     * Commands dispatcher method
+     * Commands dispatcher method. Invalid commands are rejected with a reason code and counted,
+     * exceptions are thrown only if the book doesn't skip invalid operations.
      *
      * @param line command line to process
+     * @return ACCEPTED, IGNORED or the reason of rejection
      */
-    private static void dispatchCommand( String line ) {
-        if (line.isEmpty()) return;
-        LOGGER.log(Level.INFO, "dispatching {0}", line);
-        String[] args = line.split(",");
-        if (!validCmd(args[0])) return;
-        char cmd = args[0].charAt(0);
-        try {
-            if (cmd == 'u' && validSideArg(args[3])) {
-                updateOrderBook(args);
-            } else if (cmd == 'o' && isValidOperationArg(args[1])) {
-                executeOperation(args);
-            } else if (cmd == 'q' && validQueryCmdArg(args[1])) {
-                executeQuery(args);
-            }
-        } catch (Exception e) {
-            LOGGER.log(INVALID_OPERATIONS_LOGGING_LEVEL,
-                       "Failed to perform '{0}' - {1}",
-                       new Object[] { line, e.getMessage() });
-            if (SKIP_INVALID_OPERATIONS) {
-                LOGGER.log(Level.WARNING, "Skipping command {0, string}", line);
-            } else {
-                throw e;
+    public CommandResult dispatchCommand( String line ) {
+        if (line.isEmpty()) return CommandResult.IGNORED;
+        final Object event = FlightEvents.beginCommand();
+        this.line = line;
+        fieldTo = -1;
+        commandSide = null;
+        commandPrice = 0;
+        commandSize = 0;
+        CommandResult result;
+        if (!nextField() || fieldTo - fieldFrom != 1) {
+            result = CommandResult.UNKNOWN_COMMAND;
+        } else {
+            try {
+                switch (line.charAt(0)) {
+                    case 'u':
+                        result = updateOrderBook();
+                        break;
+                    case 'o':
+                        result = executeOperation();
+                        break;
+                    case 's':
+                        result = placeStop();
+                        break;
+                    case 'q':
+                        result = executeQuery();
+                        break;
+                    case 't':
+                        result = advanceTime();
+                        break;
+                    default:
+                        result = CommandResult.UNKNOWN_COMMAND;
+                }
+            } catch (IllegalArgumentException e) {
+                result = rejectionOf(line, e);
             }
         }
+        FlightEvents.commitCommand(event, line.charAt(0), commandSide, commandPrice, commandSize, result);
+        return record(line, result);
     }
 
     /**
-     * Checks correctness of the query command arg
+     * Turns an exception thrown by the book into the reason of rejection, so it's counted and skipped
+     * like any other invalid command
      *
-     * @param arg command line argument to validate
+     * @param line command line
+     * @param e    exception thrown while the command has been applied
+     * @return reason of rejection
      */
-    private static boolean validQueryCmdArg( String arg ) {
-        boolean valid = arg.matches("(best_((ask)|(bid))|(size))");
-        if (!valid) {
-            LOGGER.log(Level.WARNING,
-                       "Invalid query command. " +
-                               "Looking for \"best_ask\", \"best_bid\" or \"size\", but \"{0}\" found",
-                       arg);
-        }
-        return valid;
+    static CommandResult rejectionOf( String line, IllegalArgumentException e ) {
+        if (e instanceof CommandRejectedException) return ((CommandRejectedException) e).getResult();
+        LOGGER.log(Level.WARNING, "Failed to perform ''{0}'' - {1}", new Object[] { line, e.getMessage() });
+        return CommandResult.INVALID_OPERATION;
     }
 
     /**
-     * Executes an update operation on the order book. In particular, adds a new order
+     * Counts the outcome of the command which has been applied to the book,
+     * possibly bypassing {@link #dispatchCommand(String)}
      *
-     * @param args arguments of executed operation
+     * @param line   command line
+     * @param result outcome of the command
+     * @return the @result
+     * @throws CommandRejectedException if the command is rejected and the book doesn't skip invalid operations
      */
-    private static void updateOrderBook( String[] args ) {
-        String sideArg = args[3];
-        int price;
-        int size;
-        try {
-            price = Integer.parseInt(args[1]);
-            if (price == 0) return;
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException(String.format(PRICE_FORMAT_IS_INVALID_FMT, args[1]));
+    CommandResult record( String line, CommandResult result ) {
+        commandsCount++;
+        resultCounts[result.ordinal()]++;
+        if (publisher != null && result == CommandResult.ACCEPTED && line.charAt(0) != 'q') {
+            publisher.publish(ordersBook);
         }
-        try {
-            size = Integer.parseInt(args[2]);
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException(String.format(SIZE_FORMAT_IS_INVALID_FMT, args[2]));
+        if (result.isRejected()) {
+            if (!ordersBook.skipsInvalidOperations()) {
+                throw new CommandRejectedException(result, String.format("Failed to perform '%s' - %s",
+                                                                         line, result.getDescription()));
+            }
+            BookEvents.rejection(commandsCount, result);
         }
-        BasicOrder.OrderSide side = sideArg.equals("bid") ? BasicOrder.OrderSide.BID : BasicOrder.OrderSide.ASK;
-        BasicOrder newOrder = new BasicOrder(price, size, side);
-        ordersBook.addOrder(newOrder);
+        return result;
+    }
+
+    /**
+     * @param result outcome of the command
+     * @return count of dispatched commands with the @result
+     */
+    public long getResultCount( CommandResult result ) {
+        return resultCounts[result.ordinal()];
+    }
+
+    /**
+     * Executes an update operation on the order book. In particular, adds a new order,
+     * which expires at the logical time given by the optional fifth field, 0 meaning good till cancel
+     */
+    private CommandResult updateOrderBook() {
+        final long price = nextNumber();
+        if (price == MISSING_NUMBER) return CommandResult.MISSING_ARGUMENT;
+        final long size = nextNumber();
+        if (size == MISSING_NUMBER) return CommandResult.MISSING_ARGUMENT;
+        if (!nextField()) return CommandResult.MISSING_ARGUMENT;
+        final BasicOrder.OrderSide side = fieldSide();
+        if (side == null) return CommandResult.INVALID_SIDE;
+        commandSide = side == BasicOrder.OrderSide.BID ? "bid" : "ask";
+        commandPrice = price;
+        commandSize = size;
+        long expireAt = nextNumber(MAX_TIMESTAMP);
+        if (expireAt == MISSING_NUMBER) expireAt = 0;
+        if (price < 0) return CommandResult.INVALID_PRICE;
+        if (price == 0) return CommandResult.IGNORED;
+        if (size <= 0) return CommandResult.INVALID_SIZE;
+        if (expireAt < 0) return CommandResult.INVALID_TIMESTAMP;
+        BookEvents.dispatchUpdate((int) price, (int) size, side, expireAt);
+        return ordersBook.tryAddOrder((int) price, (int) size, side, expireAt);
+    }
+
+    /**
+     * Moves logical time of the order book forward, expiring orders whose time has come
+     */
+    private CommandResult advanceTime() {
+        final long time = nextNumber(MAX_TIMESTAMP);
+        if (time == MISSING_NUMBER) return CommandResult.MISSING_ARGUMENT;
+        if (time < ordersBook.getTime()) return CommandResult.INVALID_TIMESTAMP;
+        BookEvents.dispatchTime(time);
+        ordersBook.advanceTime(time);
+        return CommandResult.ACCEPTED;
     }
 
     /**
      * Implements order processing - buying and selling
-     *
-     * @param args
      */
-    private static void executeOperation( String[] args ) {
-        final String operationArg = args[1];
-        int size;
-        try {
-            size = Integer.parseInt(args[2]);
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException(String.format(SIZE_FORMAT_IS_INVALID_FMT, args[2]));
-        }
-        if (operationArg.equals("buy")) {
-            ordersBook.buy(size);
+    private CommandResult executeOperation() {
+        if (!nextField()) return CommandResult.MISSING_ARGUMENT;
+        final boolean buy = fieldIs("buy");
+        if (!buy && !fieldIs("sell")) return CommandResult.UNKNOWN_OPERATION;
+        final long size = nextNumber();
+        if (size == MISSING_NUMBER) return CommandResult.MISSING_ARGUMENT;
+        commandSide = buy ? "buy" : "sell";
+        commandSize = size;
+        if (size < 0) return CommandResult.INVALID_SIZE;
+        BookEvents.dispatchOperation(buy, (int) size);
+        if (buy) {
+            ordersBook.buy((int) size);
         } else {
-            ordersBook.sell(size);
+            ordersBook.sell((int) size);
         }
+        return CommandResult.ACCEPTED;
     }
 
-    private static void executeQuery( String[] args ) {
-        if (args.length > 2) {
-            int priceLevel;
-            try {
-                priceLevel = Integer.parseInt(args[2]);
-            } catch (NumberFormatException e) {
-                throw new IllegalArgumentException(String.format(PRICE_FORMAT_IS_INVALID_FMT, args[2]));
-            }
-            System.out.println(ordersBook.querySize(priceLevel));
+    /**
+     * Places a stop order, which executes a buy or sell once the best price crosses its trigger
+     */
+    private CommandResult placeStop() {
+        if (!nextField()) return CommandResult.MISSING_ARGUMENT;
+        final boolean buy = fieldIs("buy");
+        if (!buy && !fieldIs("sell")) return CommandResult.UNKNOWN_OPERATION;
+        final long trigger = nextNumber();
+        if (trigger == MISSING_NUMBER) return CommandResult.MISSING_ARGUMENT;
+        final long size = nextNumber();
+        if (size == MISSING_NUMBER) return CommandResult.MISSING_ARGUMENT;
+        commandSide = buy ? "buy" : "sell";
+        commandPrice = trigger;
+        commandSize = size;
+        if (trigger <= 0) return CommandResult.INVALID_PRICE;
+        if (size <= 0) return CommandResult.INVALID_SIZE;
+        BookEvents.dispatchStop(buy, (int) trigger, (int) size);
+        return ordersBook.tryAddStop(buy, (int) trigger, (int) size);
+    }
+
+    /**
+     * Executes a query on the order book and prints its result
+     */
+    private CommandResult executeQuery() {
+        if (!nextField()) return CommandResult.MISSING_ARGUMENT;
+        if (fieldIs("best_bid") || fieldIs("best_ask")) {
+            final boolean bestBid = fieldIs("best_bid");
+            BookEvents.dispatchQuery(bestBid ? BookEvents.QUERY_BEST_BID : BookEvents.QUERY_BEST_ASK, 0, 0, null);
+            int price = bestBid ? ordersBook.queryBestBid() : ordersBook.queryBestAsk();
+            final int bestSize = ordersBook.querySize(price);
+            appendNumber(price).appendComma().appendNumber(bestSize).printLine();
+            BookEvents.queryResult(price, bestSize);
+        } else if (fieldIs("size")) {
+            final long price = nextNumber();
+            if (price == MISSING_NUMBER) return CommandResult.MISSING_ARGUMENT;
+            if (price < 0) return CommandResult.INVALID_PRICE;
+            BookEvents.dispatchQuery(BookEvents.QUERY_SIZE, price, 0, null);
+            appendNumber(ordersBook.querySize((int) price)).printLine();
+        } else if (fieldIs("buy_cost") || fieldIs("sell_cost")) {
+            final boolean buy = fieldIs("buy_cost");
+            final long size = nextNumber();
+            if (size == MISSING_NUMBER) return CommandResult.MISSING_ARGUMENT;
+            if (size <= 0) return CommandResult.INVALID_SIZE;
+            BookEvents.dispatchQuery(buy ? BookEvents.QUERY_BUY_COST : BookEvents.QUERY_SELL_COST, size, 0, null);
+            ExecutionEstimate estimate = buy ? ordersBook.estimateBuy((int) size) : ordersBook.estimateSell((int) size);
+            out.println(String.format(Locale.ROOT, "%d,%.2f,%d", estimate.getSize(),
+                                      estimate.getAveragePrice(), estimate.getWorstPrice()));
+        } else if (fieldIs("cumulative_size")) {
+            if (!nextField()) return CommandResult.MISSING_ARGUMENT;
+            final BasicOrder.OrderSide side = fieldSide();
+            if (side == null) return CommandResult.INVALID_SIDE;
+            final long price = nextNumber();
+            if (price == MISSING_NUMBER) return CommandResult.MISSING_ARGUMENT;
+            if (price <= 0) return CommandResult.INVALID_PRICE;
+            BookEvents.dispatchQuery(BookEvents.QUERY_CUMULATIVE_SIZE, price, 0, side);
+            appendNumber(ordersBook.queryCumulativeSize(side, (int) price)).printLine();
+        } else if (fieldIs("range")) {
+            final long from = nextNumber();
+            final long to = nextNumber();
+            if (from == MISSING_NUMBER || to == MISSING_NUMBER) return CommandResult.MISSING_ARGUMENT;
+            if (from <= 0 || to <= 0) return CommandResult.INVALID_PRICE;
+            if (from > to) return CommandResult.INVALID_RANGE;
+            BookEvents.dispatchQuery(BookEvents.QUERY_RANGE, from, to, null);
+            RangeStat range = ordersBook.queryRange((int) from, (int) to);
+            appendNumber(range.getBidSize()).appendComma().appendNumber(range.getBidOrders()).appendComma()
+                    .appendNumber(range.getAskSize()).appendComma().appendNumber(range.getAskOrders()).printLine();
         } else {
-            int price;
-            price = args[1].equals("best_bid") ? ordersBook.queryBestBid() : ordersBook.queryBestAsk();
-            final int size = ordersBook.querySize(price);
-            System.out.printf("%d,%d%n", price, size);
-            LOGGER.log(Level.INFO, "{0,number},{1,number}", new Object[] { price, size });
+            return CommandResult.UNKNOWN_QUERY;
         }
+        return CommandResult.ACCEPTED;
     }
 
-    private static boolean isValidOperationArg( String arg ) {
-        boolean valid = arg.matches("(buy)|(sell)");
-        if (!valid) {
-            LOGGER.log(Level.WARNING, "Invalid order operation. " +
-                                              "Looking for \"buy\" or \"sell\", but \"{0}\" found", arg);
+    /**
+     * Appends decimal digits of the @value to the query result being formatted
+     */
+    private BasicOrderManagement appendNumber( long value ) {
+        if (value < 0) {
+            outputLine[outputLength++] = '-';
+            value = -value;
+        }
+        final int from = outputLength;
+        do {
+            outputLine[outputLength++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int i = from, j = outputLength - 1; i < j; i++, j--) {
+            final byte digit = outputLine[i];
+            outputLine[i] = outputLine[j];
+            outputLine[j] = digit;
         }
-        return valid;
+        return this;
     }
 
-    private static boolean validSideArg( String arg ) {
-        boolean valid = arg.matches("(bid)|(ask)");
-        if (!valid) {
-            LOGGER.log(Level.WARNING, "Invalid side argument. " +
-                                              "Looking for \"bid\" or \"ask\", but \"{0}\" found", arg);
-        }
-        return valid;
+    private BasicOrderManagement appendComma() {
+        outputLine[outputLength++] = ',';
+        return this;
+    }
+
+    /**
+     * Prints the query result being formatted as a line
+     */
+    private void printLine() {
+        System.arraycopy(LINE_SEPARATOR, 0, outputLine, outputLength, LINE_SEPARATOR.length);
+        out.write(outputLine, 0, outputLength + LINE_SEPARATOR.length);
+        outputLength = 0;
+    }
+
+    /**
+     * Moves to the next comma separated field of the current line
+     *
+     * @return false if there are no fields left
+     */
+    private boolean nextField() {
+        if (fieldTo >= line.length()) return false;
+        fieldFrom = fieldTo + 1;
+        final int comma = line.indexOf(',', fieldFrom);
+        fieldTo = comma < 0 ? line.length() : comma;
+        return true;
+    }
+
+    private boolean fieldIs( String value ) {
+        return fieldTo - fieldFrom == value.length() && line.startsWith(value, fieldFrom);
+    }
+
+    /**
+     * Parses the next field as integer
+     *
+     * @return value of the field, MISSING_NUMBER if there are no fields left,
+     * or INVALID_NUMBER if the field isn't an integer
+     */
+    private long nextNumber() {
+        return nextNumber(Integer.MAX_VALUE);
     }
 
-    private static boolean validCmd( String arg ) {
-        boolean valid = arg.matches("[uoq]");
-        if (!valid) {
-//      String errMsg = String.format("Invalid command symbol found. " +
-//                                        "Looking for \"u\", \"o\", \"q\" but \"%s\" found", arg);
-            LOGGER.log(Level.WARNING, "Invalid command symbol found. " +
-                                              "Looking for \"u\", \"o\", \"q\" but \"{0}\" found", arg);
+    /**
+     * Parses the next field as integer whose absolute value doesn't exceed @maxValue
+     *
+     * @param maxValue maximal absolute value, at most MAX_TIMESTAMP
+     * @return value of the field, MISSING_NUMBER if there are no fields left,
+     * or INVALID_NUMBER if the field isn't such an integer
+     */
+    private long nextNumber( long maxValue ) {
+        if (!nextField()) return MISSING_NUMBER;
+        final boolean negative = fieldTo > fieldFrom && line.charAt(fieldFrom) == '-';
+        int i = negative ? fieldFrom + 1 : fieldFrom;
+        if (i == fieldTo || fieldTo - i > 18) return INVALID_NUMBER;
+        long value = 0;
+        for (; i < fieldTo; i++) {
+            final char c = line.charAt(i);
+            if (c < '0' || c > '9') return INVALID_NUMBER;
+            value = value * 10 + (c - '0');
         }
-        return valid;
+        if (value > maxValue) return INVALID_NUMBER;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses the current field as side of the order
+     *
+     * @return side of the order, or null if the field is invalid
+     */
+    private BasicOrder.OrderSide fieldSide() {
+        if (fieldIs("bid")) return BasicOrder.OrderSide.BID;
+        if (fieldIs("ask")) return BasicOrder.OrderSide.ASK;
+        return null;
     }
 
 }
@@ -0,0 +1,149 @@
+package com.bookmap.ordermanagement;
+
+import com.bookmap.util.AsyncEventLog;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hot path events of the order management. They are recorded as primitives into the {@link AsyncEventLog},
+ * so formatting and writing happen on the background thread instead of the matching one.
+ */
+final class BookEvents {
+
+    static final int DISPATCH_UPDATE    = 0;
+    static final int DISPATCH_OPERATION = 1;
+    static final int DISPATCH_QUERY     = 2;
+    static final int QUERY_RESULT       = 3;
+    static final int BOOK_STAT          = 4;
+    static final int REJECTION          = 5;
+    static final int DISPATCH_TIME      = 6;
+    static final int DISPATCH_STOP      = 7;
+
+    static final int QUERY_BEST_BID        = 0;
+    static final int QUERY_BEST_ASK        = 1;
+    static final int QUERY_SIZE            = 2;
+    static final int QUERY_BUY_COST        = 3;
+    static final int QUERY_SELL_COST       = 4;
+    static final int QUERY_CUMULATIVE_SIZE = 5;
+    static final int QUERY_RANGE           = 6;
+
+    private static final AsyncEventLog LOG = new AsyncEventLog(Logger.getLogger("com.bookmap.ordermanagement"),
+                                                               Level.INFO,
+                                                               Integer.getInteger("asyncLogCapacity", 1 << 16),
+                                                               BookEvents::format);
+
+    private BookEvents() {
+    }
+
+    static boolean isEnabled() {
+        return LOG.isEnabled();
+    }
+
+    static void dispatchUpdate( int price, int size, BasicOrder.OrderSide side ) {
+        dispatchUpdate(price, size, side, 0);
+    }
+
+    static void dispatchUpdate( int price, int size, BasicOrder.OrderSide side, long expireAt ) {
+        if (LOG.isEnabled()) LOG.log(DISPATCH_UPDATE, price, size, side.ordinal(), expireAt, 0);
+    }
+
+    static void dispatchStop( boolean buy, int trigger, int size ) {
+        if (LOG.isEnabled()) LOG.log(DISPATCH_STOP, buy ? 1 : 0, trigger, size, 0, 0);
+    }
+
+    static void dispatchTime( long time ) {
+        if (LOG.isEnabled()) LOG.log(DISPATCH_TIME, time, 0, 0, 0, 0);
+    }
+
+    static void dispatchOperation( boolean buy, int size ) {
+        if (LOG.isEnabled()) LOG.log(DISPATCH_OPERATION, buy ? 1 : 0, size, 0, 0, 0);
+    }
+
+    /**
+     * @param query one of QUERY_* kinds
+     * @param arg0  first numeric argument of the query if any
+     * @param arg1  second numeric argument of the query if any
+     * @param side  side argument of the query if any
+     */
+    static void dispatchQuery( int query, long arg0, long arg1, BasicOrder.OrderSide side ) {
+        if (LOG.isEnabled()) LOG.log(DISPATCH_QUERY, query, arg0, arg1, side == null ? -1 : side.ordinal(), 0);
+    }
+
+    static void queryResult( int price, int size ) {
+        if (LOG.isEnabled()) LOG.log(QUERY_RESULT, price, size, 0, 0, 0);
+    }
+
+    static void bookStat( long askSize, int askLevels, long bidSize, int bidLevels, long orders ) {
+        if (LOG.isEnabled()) LOG.log(BOOK_STAT, askSize, askLevels, bidSize, bidLevels, orders);
+    }
+
+    static void rejection( long command, CommandResult reason ) {
+        if (LOG.isEnabled()) LOG.log(REJECTION, command, reason.ordinal(), 0, 0, 0);
+    }
+
+    /**
+     * @return count of events dropped because the ring was full
+     */
+    static long getDroppedCount() {
+        return LOG.getDroppedCount();
+    }
+
+    /**
+     * Waits until all recorded events are written
+     */
+    static void close() {
+        LOG.close();
+    }
+
+    private static String format( int type, long arg0, long arg1, long arg2, long arg3, long arg4 ) {
+        switch (type) {
+            case DISPATCH_UPDATE:
+                return String.format("dispatching u,%d,%d,%s", arg0, arg1, sideArg(arg2))
+                        + (arg3 == 0 ? "" : "," + arg3);
+            case DISPATCH_STOP:
+                return String.format("dispatching s,%s,%d,%d", arg0 == 1 ? "buy" : "sell", arg1, arg2);
+            case DISPATCH_TIME:
+                return "dispatching t," + arg0;
+            case DISPATCH_OPERATION:
+                return String.format("dispatching o,%s,%d", arg0 == 1 ? "buy" : "sell", arg1);
+            case DISPATCH_QUERY:
+                return "dispatching q," + formatQuery((int) arg0, arg1, arg2, arg3);
+            case QUERY_RESULT:
+                return String.format("%d,%d", arg0, arg1);
+            case BOOK_STAT:
+                return String.format("Total asks size: %d, ask levels: %d, total bids size: %d, bid levels: %d, " +
+                                             "total orders: %d", arg0, arg1, arg2, arg3, arg4);
+            case REJECTION:
+                return String.format("command #%d rejected - %s", arg0,
+                                     CommandResult.values()[(int) arg1].getDescription());
+            default:
+                return "unknown event " + type;
+        }
+    }
+
+    private static String formatQuery( int query, long arg0, long arg1, long side ) {
+        switch (query) {
+            case QUERY_BEST_BID:
+                return "best_bid";
+            case QUERY_BEST_ASK:
+                return "best_ask";
+            case QUERY_SIZE:
+                return "size," + arg0;
+            case QUERY_BUY_COST:
+                return "buy_cost," + arg0;
+            case QUERY_SELL_COST:
+                return "sell_cost," + arg0;
+            case QUERY_CUMULATIVE_SIZE:
+                return "cumulative_size," + sideArg(side) + "," + arg0;
+            case QUERY_RANGE:
+                return "range," + arg0 + "," + arg1;
+            default:
+                return "unknown query " + query;
+        }
+    }
+
+    private static String sideArg( long side ) {
+        return side == BasicOrder.OrderSide.BID.ordinal() ? "bid" : "ask";
+    }
+}
@@ -0,0 +1,110 @@
+package com.bookmap.ordermanagement;
+
+import java.util.Arrays;
+
+/**
+ * Compact immutable copy of the {@link OrdersBook} state. Price levels are kept in ascending price order,
+ * so the first @bidLevels of them are bids and the rest are asks. Sizes and expiry times of the orders
+ * are stored level by level in their FIFO order, along with logical time of the book. Pending stops follow,
+ * the first @buyStops of them are buy stops, each side in the order the stops would be triggered.
+ */
+public class BookSnapshot {
+
+    private final int   bidLevels;
+    private final int[] prices;
+    private final int[] ordersCounts;
+    private final int[]  orderSizes;
+    private final long[] orderExpiries;
+    private final long   time;
+    private final int    buyStops;
+    private final int[]  stopTriggers;
+    private final int[]  stopSizes;
+
+    BookSnapshot( int bidLevels, int[] prices, int[] ordersCounts, int[] orderSizes, long[] orderExpiries,
+                  long time, int buyStops, int[] stopTriggers, int[] stopSizes )
+    {
+        this.bidLevels = bidLevels;
+        this.prices = prices;
+        this.ordersCounts = ordersCounts;
+        this.orderSizes = orderSizes;
+        this.orderExpiries = orderExpiries;
+        this.time = time;
+        this.buyStops = buyStops;
+        this.stopTriggers = stopTriggers;
+        this.stopSizes = stopSizes;
+    }
+
+    int getBidLevels() {
+        return bidLevels;
+    }
+
+    int getLevelsCount() {
+        return prices.length;
+    }
+
+    int getPrice( int level ) {
+        return prices[level];
+    }
+
+    int getOrdersCount( int level ) {
+        return ordersCounts[level];
+    }
+
+    int getOrderSize( int order ) {
+        return orderSizes[order];
+    }
+
+    long getOrderExpiry( int order ) {
+        return orderExpiries[order];
+    }
+
+    long getTime() {
+        return time;
+    }
+
+    int getBuyStops() {
+        return buyStops;
+    }
+
+    int getStopsCount() {
+        return stopTriggers.length;
+    }
+
+    int getStopTrigger( int stop ) {
+        return stopTriggers[stop];
+    }
+
+    int getStopSize( int stop ) {
+        return stopSizes[stop];
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BookSnapshot that = (BookSnapshot) o;
+        return bidLevels == that.bidLevels
+                && time == that.time
+                && buyStops == that.buyStops
+                && Arrays.equals(prices, that.prices)
+                && Arrays.equals(ordersCounts, that.ordersCounts)
+                && Arrays.equals(orderSizes, that.orderSizes)
+                && Arrays.equals(orderExpiries, that.orderExpiries)
+                && Arrays.equals(stopTriggers, that.stopTriggers)
+                && Arrays.equals(stopSizes, that.stopSizes);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = bidLevels;
+        result = 31 * result + Arrays.hashCode(prices);
+        result = 31 * result + Arrays.hashCode(ordersCounts);
+        result = 31 * result + Arrays.hashCode(orderSizes);
+        result = 31 * result + Arrays.hashCode(orderExpiries);
+        result = 31 * result + Long.hashCode(time);
+        result = 31 * result + buyStops;
+        result = 31 * result + Arrays.hashCode(stopTriggers);
+        result = 31 * result + Arrays.hashCode(stopSizes);
+        return result;
+    }
+}
@@ -0,0 +1,44 @@
+package com.bookmap.ordermanagement;
+
+/**
+ * Running totals of the {@link OrdersBook}
+ */
+public class BookStats {
+
+    private final long bidSize;
+    private final long askSize;
+    private final int  bidLevels;
+    private final int  askLevels;
+    private final long orders;
+
+    BookStats( long bidSize, long askSize, int bidLevels, int askLevels, long orders ) {
+        this.bidSize = bidSize;
+        this.askSize = askSize;
+        this.bidLevels = bidLevels;
+        this.askLevels = askLevels;
+        this.orders = orders;
+    }
+
+    public long getBidSize() {
+        return bidSize;
+    }
+
+    public long getAskSize() {
+        return askSize;
+    }
+
+    public int getBidLevels() {
+        return bidLevels;
+    }
+
+    public int getAskLevels() {
+        return askLevels;
+    }
+
+    /**
+     * @return count of orders of both sides
+     */
+    public long getOrders() {
+        return orders;
+    }
+}
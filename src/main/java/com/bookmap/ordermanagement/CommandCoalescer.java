@@ -0,0 +1,211 @@
+package com.bookmap.ordermanagement;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Optional stage in front of the {@link BasicOrderManagement} which removes redundant work from a window
+ * of commands:
+ * <ul>
+ * <li>a query repeating one of the recent queries with no mutation of the book in between
+ * is answered with the output cached from the first one;</li>
+ * <li>a run of consecutive adds at the same price and side is applied to the book as one level update,
+ * the orders keep their FIFO order within the level.</li>
+ * </ul>
+ * Printed output and outcomes of the commands are the same as if each command has been dispatched alone,
+ * including deals of the stops triggered by a folded run of adds.
+ * Only the hot path log events of the cached queries are skipped.
+ */
+public class CommandCoalescer {
+
+    /**
+     * Count of distinct queries remembered between mutations
+     */
+    private static final int CACHE_SLOTS = 4;
+
+    private final OrdersBook           ordersBook;
+    private final PrintStream          out;
+    private final Capture              capture = new Capture();
+    private final BasicOrderManagement dispatcher;
+
+    /**
+     * Sizes of the run of adds being folded
+     */
+    private int[] sizes = new int[16];
+
+    /**
+     * Queries answered since the latest mutation and their printed output
+     */
+    private final String[] cachedQueries = new String[CACHE_SLOTS];
+    private final byte[][] cachedOutputs = new byte[CACHE_SLOTS][64];
+    private final int[]    cachedLengths = new int[CACHE_SLOTS];
+    private       int      nextSlot;
+
+    /**
+     * Fields of the add parsed by {@link #parseAdd(String)}
+     */
+    private int                  addPrice;
+    private int                  addSize;
+    private BasicOrder.OrderSide addSide;
+
+    /**
+     * @param ordersBook order book commands are applied to
+     * @param out        stream query results are printed to
+     */
+    public CommandCoalescer( OrdersBook ordersBook, PrintStream out ) {
+        this.ordersBook = ordersBook;
+        this.out = out;
+        this.dispatcher = new BasicOrderManagement(ordersBook, new PrintStream(capture));
+    }
+
+    /**
+     * @return dispatcher the commands are passed to, it counts outcomes of all commands of the stage
+     */
+    public BasicOrderManagement getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Applies a window of commands
+     *
+     * @param lines   command lines
+     * @param count   count of lines in the window
+     * @param results outcomes of the commands in the order of @lines
+     */
+    public void dispatchWindow( String[] lines, int count, CommandResult[] results ) {
+        int i = 0;
+        while (i < count) {
+            if (!parseAdd(lines[i])) {
+                results[i] = dispatch(lines[i]);
+                i++;
+                continue;
+            }
+            final int price = addPrice;
+            final BasicOrder.OrderSide side = addSide;
+            int run = 0;
+            do {
+                if (run == sizes.length) sizes = Arrays.copyOf(sizes, run * 2);
+                sizes[run++] = addSize;
+            } while (i + run < count && parseAdd(lines[i + run]) && addPrice == price && addSide == side);
+            if (run == 1) {
+                results[i] = dispatch(lines[i]);
+            } else {
+                dispatchAdds(lines, i, run, price, side, results);
+            }
+            i += run;
+        }
+    }
+
+    private void dispatchAdds( String[] lines, int from, int count, int price, BasicOrder.OrderSide side,
+                               CommandResult[] results )
+    {
+        for (int i = 0; i < count; i++) {
+            BookEvents.dispatchUpdate(price, sizes[i], side);
+        }
+        CommandResult result;
+        try {
+            result = ordersBook.tryAddOrders(price, sizes, 0, count, side);
+        } catch (IllegalArgumentException e) {
+            result = BasicOrderManagement.rejectionOf(lines[from], e);
+        }
+        if (result == CommandResult.ACCEPTED) invalidateQueries();
+        for (int i = 0; i < count; i++) {
+            results[from + i] = dispatcher.record(lines[from + i], result);
+        }
+    }
+
+    private CommandResult dispatch( String line ) {
+        final boolean query = !line.isEmpty() && line.charAt(0) == 'q';
+        if (query) {
+            for (int slot = 0; slot < CACHE_SLOTS; slot++) {
+                if (line.equals(cachedQueries[slot])) {
+                    out.write(cachedOutputs[slot], 0, cachedLengths[slot]);
+                    return dispatcher.record(line, CommandResult.ACCEPTED);
+                }
+            }
+        }
+        final CommandResult result;
+        try {
+            result = dispatcher.dispatchCommand(line);
+            if (result == CommandResult.ACCEPTED) {
+                if (query) {
+                    cacheQuery(line);
+                } else {
+                    invalidateQueries();
+                }
+            }
+        } finally {
+            capture.drainTo(out);
+        }
+        return result;
+    }
+
+    private void cacheQuery( String line ) {
+        final int slot = nextSlot;
+        nextSlot = (slot + 1) % CACHE_SLOTS;
+        if (cachedOutputs[slot].length < capture.size()) cachedOutputs[slot] = new byte[capture.size()];
+        cachedLengths[slot] = capture.copyTo(cachedOutputs[slot]);
+        cachedQueries[slot] = line;
+    }
+
+    private void invalidateQueries() {
+        Arrays.fill(cachedQueries, null);
+        nextSlot = 0;
+    }
+
+    /**
+     * Parses well-formed "u,&lt;price&gt;,&lt;size&gt;,&lt;side&gt;" command with positive price and size.
+     * Any other line is left to the dispatcher.
+     *
+     * @return true if the line is such an add
+     */
+    private boolean parseAdd( String line ) {
+        if (line.length() < 8 || line.charAt(0) != 'u' || line.charAt(1) != ',') return false;
+        final int priceTo = line.indexOf(',', 2);
+        if (priceTo < 0) return false;
+        final int sizeTo = line.indexOf(',', priceTo + 1);
+        if (sizeTo < 0 || line.length() - sizeTo != 4) return false;
+        if (line.startsWith("bid", sizeTo + 1)) {
+            addSide = BasicOrder.OrderSide.BID;
+        } else if (line.startsWith("ask", sizeTo + 1)) {
+            addSide = BasicOrder.OrderSide.ASK;
+        } else {
+            return false;
+        }
+        addPrice = parsePositive(line, 2, priceTo);
+        addSize = parsePositive(line, priceTo + 1, sizeTo);
+        return addPrice > 0 && addSize > 0;
+    }
+
+    /**
+     * @return value of the digits between @from and @to, or -1 if it isn't a positive integer
+     */
+    private static int parsePositive( String line, int from, int to ) {
+        if (from == to || to - from > 10) return -1;
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            final char c = line.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value > 0 && value <= Integer.MAX_VALUE ? (int) value : -1;
+    }
+
+    /**
+     * Collects output of a single command
+     */
+    private static class Capture extends ByteArrayOutputStream {
+
+        int copyTo( byte[] target ) {
+            System.arraycopy(buf, 0, target, 0, count);
+            return count;
+        }
+
+        void drainTo( PrintStream out ) {
+            if (count == 0) return;
+            out.write(buf, 0, count);
+            reset();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.bookmap.ordermanagement;
+
+/**
+ * Thrown by the {@link OrdersBook} which doesn't skip invalid operations, carries the reason of rejection
+ * so the dispatcher can count it as the outcome of the command
+ */
+public class CommandRejectedException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final CommandResult result;
+
+    public CommandRejectedException( CommandResult result, String message ) {
+        super(message);
+        this.result = result;
+    }
+
+    public CommandResult getResult() {
+        return result;
+    }
+}
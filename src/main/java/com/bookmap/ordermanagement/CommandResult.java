@@ -0,0 +1,40 @@
+package com.bookmap.ordermanagement;
+
+/**
+ * Outcome of a command applied to the {@link OrdersBook}: either accepted or the reason of rejection
+ */
+public enum CommandResult {
+    ACCEPTED("Accepted"),
+    IGNORED("Nothing to perform"),
+    UNKNOWN_COMMAND("Invalid command symbol, looking for \"u\", \"o\", \"s\", \"q\" or \"t\""),
+    UNKNOWN_OPERATION("Invalid order operation, looking for \"buy\" or \"sell\""),
+    UNKNOWN_QUERY("Invalid query command, looking for \"best_ask\", \"best_bid\", \"size\", \"buy_cost\", "
+                          + "\"sell_cost\", \"cumulative_size\" or \"range\""),
+    MISSING_ARGUMENT("Command argument is missing"),
+    INVALID_SIDE("Invalid side argument, looking for \"bid\" or \"ask\""),
+    INVALID_PRICE("Price should be a positive integer"),
+    INVALID_SIZE("Size should be a positive integer"),
+    INVALID_RANGE("Range bounds are reversed"),
+    INVALID_TIMESTAMP("Timestamp should be a non-negative integer not before the current time"),
+    ORDER_EXPIRED("Expiry time should be later than the current time"),
+    CROSSED_SPREAD("Spread should remain positive"),
+    TRIGGER_CROSSED("Trigger price is already crossed by the best price"),
+    INVALID_OPERATION("Operation is rejected by the order book");
+
+    private final String description;
+
+    CommandResult( String description ) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return true if the command has been rejected
+     */
+    public boolean isRejected() {
+        return this != ACCEPTED && this != IGNORED;
+    }
+}
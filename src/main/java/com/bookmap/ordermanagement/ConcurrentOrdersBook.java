@@ -0,0 +1,277 @@
+package com.bookmap.ordermanagement;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe variant of the {@link OrdersBook} for several threads feeding one instrument.
+ * <p>
+ * Every price level has its own lock, so passive orders added at different price levels proceed in parallel,
+ * and buy/sell deals lock only the levels they consume. A new order is announced as pending size of its level
+ * before it's checked against the opposite side, and only levels holding resting or pending size count as
+ * crossed, so out of two concurrent orders crossing each other at least one sees the other and gets rejected,
+ * while empty levels never cause a rejection. Best bid and best ask are published together in one atomic
+ * after every change of the first levels; they may lag behind while writers are active, but never cross.
+ */
+public class ConcurrentOrdersBook {
+
+    /**
+     * Price Level contains all orders of the same price. Guarded by its own monitor.
+     */
+    private static class PriceLevel {
+        final int               price;
+        final Queue<BasicOrder> orders = new ArrayDeque<>();
+
+        /**
+         * actual Size of the price level(sum of sizes of all orders at current price level).
+         * Written holding the lock of the level, read without it.
+         */
+        volatile int size;
+
+        /**
+         * sum of sizes of the orders which are being checked against the opposite side
+         */
+        volatile int pending;
+
+        /**
+         * set when the level is removed from the book, the level is not reused afterwards
+         */
+        boolean removed;
+
+        PriceLevel( int price ) {
+            this.price = price;
+        }
+    }
+
+    /**
+     * Bid price levels, the best one first
+     */
+    private final ConcurrentSkipListMap<Integer, PriceLevel> bids = new ConcurrentSkipListMap<>(
+            Comparator.reverseOrder());
+
+    /**
+     * Ask price levels, the best one first
+     */
+    private final ConcurrentSkipListMap<Integer, PriceLevel> asks = new ConcurrentSkipListMap<>();
+
+    /**
+     * Best bid price in the high half and best ask price in the low half, see {@link #queryBestPrices()}
+     */
+    private final AtomicLong bestPrices = new AtomicLong();
+
+    /**
+     * Append a new Bid or Ask into Order Book
+     *
+     * @param price price of the new order
+     * @param size  size of the new order
+     * @param side  side of the new order
+     * @return ACCEPTED or the reason of rejection
+     */
+    public CommandResult tryAddOrder( int price, int size, BasicOrder.OrderSide side ) {
+        if (price <= 0) return CommandResult.INVALID_PRICE;
+        if (size <= 0) return CommandResult.INVALID_SIZE;
+        final boolean bid = side == BasicOrder.OrderSide.BID;
+        final ConcurrentSkipListMap<Integer, PriceLevel> levels = bid ? bids : asks;
+        for (;;) {
+            PriceLevel priceLevel = levels.computeIfAbsent(price, PriceLevel::new);
+            synchronized (priceLevel) {
+                if (priceLevel.removed) continue;
+                priceLevel.pending += size;
+            }
+            // the level is not removed while it has pending size
+            final boolean crossed = crossesSpread(price, bid);
+            synchronized (priceLevel) {
+                if (crossed) {
+                    priceLevel.pending -= size;
+                    if (priceLevel.size == 0 && priceLevel.pending == 0) removeLevel(levels, priceLevel);
+                } else {
+                    priceLevel.orders.offer(new BasicOrder(price, size, side));
+                    // size goes first, so the order is seen as either pending or resting by crossesSpread
+                    priceLevel.size += size;
+                    priceLevel.pending -= size;
+                }
+            }
+            if (!crossed) refreshBest();
+            return crossed ? CommandResult.CROSSED_SPREAD : CommandResult.ACCEPTED;
+        }
+    }
+
+    /**
+     * Execute sell deal of @size units of most expensive bids
+     *
+     * @param size quantity of units to sell
+     * @return quantity of units sold
+     */
+    public int sell( int size ) {
+        if (size < 0)
+            throw new IllegalArgumentException("\"Size\" should be positive");
+        return deal(size, bids);
+    }
+
+    /**
+     * Execute buy deal of @size units of cheapest asks
+     *
+     * @param size quantity of units to buy
+     * @return quantity of units bought
+     */
+    public int buy( int size ) {
+        if (size < 0)
+            throw new IllegalArgumentException("\"Size\" should be positive");
+        return deal(size, asks);
+    }
+
+    /**
+     * Consumes orders from the best price level in FIFO order until @size units are dealt
+     * or there are no orders left. Only the level being consumed is locked.
+     */
+    private int deal( int size, ConcurrentSkipListMap<Integer, PriceLevel> levels ) {
+        int remaining = size;
+        boolean levelsEmptied = false;
+        for (PriceLevel priceLevel : levels.values()) {
+            if (remaining == 0) break;
+            synchronized (priceLevel) {
+                if (priceLevel.removed || priceLevel.size == 0) continue;
+                while (remaining > 0 && !priceLevel.orders.isEmpty()) {
+                    BasicOrder firstOrder = priceLevel.orders.peek();
+                    int available = firstOrder.getSize();
+                    if (available > remaining) {
+                        firstOrder.setSize(available - remaining);
+                        priceLevel.size -= remaining;
+                        remaining = 0;
+                    } else {
+                        priceLevel.orders.poll();
+                        priceLevel.size -= available;
+                        remaining -= available;
+                    }
+                }
+                if (priceLevel.size == 0) {
+                    // a level with pending size is removed by its adder if the order is rejected
+                    if (priceLevel.pending == 0) removeLevel(levels, priceLevel);
+                    levelsEmptied = true;
+                }
+            }
+        }
+        if (levelsEmptied) refreshBest();
+        return size - remaining;
+    }
+
+    /**
+     * Returns size of all orders at specified price level
+     *
+     * @param price - value of price level
+     * @return sum of the sizes at specified price level
+     */
+    public int querySize( int price ) {
+        PriceLevel priceLevel = bids.get(price);
+        if (priceLevel == null) priceLevel = asks.get(price);
+        if (priceLevel == null) return 0;
+        synchronized (priceLevel) {
+            return priceLevel.size;
+        }
+    }
+
+    /**
+     * @return highest bid price among all bids, or 0 if there are no bids
+     */
+    public int queryBestBid() {
+        return bidOf(bestPrices.get());
+    }
+
+    /**
+     * @return lowest ask price among all asks, or 0 if there are no asks
+     */
+    public int queryBestAsk() {
+        return askOf(bestPrices.get());
+    }
+
+    /**
+     * Best bid and best ask published at the same moment, unlike subsequent calls of {@link #queryBestBid()}
+     * and {@link #queryBestAsk()}. Use {@link #bidOf(long)} and {@link #askOf(long)} to unpack them.
+     *
+     * @return best bid price in the high half and best ask price in the low half
+     */
+    public long queryBestPrices() {
+        return bestPrices.get();
+    }
+
+    public static int bidOf( long bestPrices ) {
+        return (int) (bestPrices >>> 32);
+    }
+
+    public static int askOf( long bestPrices ) {
+        return (int) bestPrices;
+    }
+
+    /**
+     * Sums sizes of all price levels of the @side. It isn't atomic in regard to concurrent writers.
+     *
+     * @param side side of the book
+     * @return total size of the orders of the @side
+     */
+    public long queryTotalSize( BasicOrder.OrderSide side ) {
+        long total = 0;
+        for (PriceLevel priceLevel : (side == BasicOrder.OrderSide.BID ? bids : asks).values()) {
+            synchronized (priceLevel) {
+                total += priceLevel.size;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Checks the new order against the levels of the opposite side it would cross. Empty levels are skipped,
+     * orders which are being added concurrently count as resting ones, so two orders crossing each other
+     * at the same moment may both be rejected.
+     */
+    private boolean crossesSpread( int price, boolean bid ) {
+        for (PriceLevel priceLevel : (bid ? asks : bids).values()) {
+            if (bid ? priceLevel.price > price : priceLevel.price < price) return false;
+            // pending is read first, an accepted order leaves it after it has been added to size
+            if (priceLevel.pending > 0 || priceLevel.size > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Must be called holding the lock of the @priceLevel
+     */
+    private static void removeLevel( ConcurrentSkipListMap<Integer, PriceLevel> levels, PriceLevel priceLevel ) {
+        priceLevel.removed = true;
+        levels.remove(priceLevel.price, priceLevel);
+    }
+
+    /**
+     * Publishes prices of the first non-empty levels into {@link #bestPrices}. Each writer leaves only after
+     * it has seen them equal to the first levels, so once writers are done they match the book.
+     */
+    private void refreshBest() {
+        for (;;) {
+            final long seen = bestPrices.get();
+            final long actual = firstPrices();
+            if (seen == actual) return;
+            bestPrices.compareAndSet(seen, actual);
+        }
+    }
+
+    /**
+     * The sides are read one after another, so they are read again if a concurrent deal and add
+     * have made them look crossed
+     */
+    private long firstPrices() {
+        for (;;) {
+            final int bid = firstPrice(bids);
+            final int ask = firstPrice(asks);
+            if (bid == 0 || ask == 0 || bid < ask) return (long) bid << 32 | ask;
+        }
+    }
+
+    private static int firstPrice( ConcurrentSkipListMap<Integer, PriceLevel> levels ) {
+        for (PriceLevel priceLevel : levels.values()) {
+            if (priceLevel.size > 0) return priceLevel.price;
+        }
+        return 0;
+    }
+}
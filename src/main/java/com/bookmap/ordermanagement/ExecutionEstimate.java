@@ -0,0 +1,44 @@
+package com.bookmap.ordermanagement;
+
+/**
+ * Result of a non-mutating buy/sell estimation against the {@link OrdersBook}
+ */
+public class ExecutionEstimate {
+
+    /**
+     * quantity of units the book is able to fill, may be less than requested
+     */
+    private final long size;
+
+    /**
+     * sum of price * size of all units filled
+     */
+    private final long notional;
+
+    /**
+     * price of the last level touched by the deal
+     */
+    private final int worstPrice;
+
+    ExecutionEstimate( long size, long notional, int worstPrice ) {
+        this.size = size;
+        this.notional = notional;
+        this.worstPrice = worstPrice;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getNotional() {
+        return notional;
+    }
+
+    public int getWorstPrice() {
+        return worstPrice;
+    }
+
+    public double getAveragePrice() {
+        return size == 0 ? 0d : (double) notional / size;
+    }
+}
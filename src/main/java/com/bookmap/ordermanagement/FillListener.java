@@ -0,0 +1,20 @@
+package com.bookmap.ordermanagement;
+
+/**
+ * Receives fills of the resting orders consumed by {@link OrdersBook#buy(int)} and {@link OrdersBook#sell(int)}.
+ * It's called on the matching thread after the book has been updated, once per consumed or partially consumed
+ * order in FIFO order, so implementations should be fast and must not modify the book.
+ */
+@FunctionalInterface
+public interface FillListener {
+
+    FillListener NONE = ( price, quantity, side, remainingSize ) -> { };
+
+    /**
+     * @param price         price of the resting order
+     * @param quantity      quantity of units filled
+     * @param side          side of the resting order
+     * @param remainingSize size left in the resting order, 0 if the order is consumed completely
+     */
+    void onFill( int price, int quantity, BasicOrder.OrderSide side, int remainingSize );
+}
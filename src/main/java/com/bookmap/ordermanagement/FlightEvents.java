@@ -0,0 +1,54 @@
+package com.bookmap.ordermanagement;
+
+/**
+ * Facade of the Java Flight Recorder events of the order management. This is the Java 8 implementation
+ * which records nothing; the multi-release jar replaces it on Java 11+ with the one in src/main/java11.
+ * Methods returning an event return null when the event is disabled, so the callers don't pay for it.
+ */
+final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    /**
+     * @return started command dispatch event, or null if it's disabled
+     */
+    static Object beginCommand() {
+        return null;
+    }
+
+    /**
+     * @param event   event returned by {@link #beginCommand()}
+     * @param type    command symbol
+     * @param side    side or direction argument of the command, if any
+     * @param price   price argument of the command, if any
+     * @param size    size argument of the command, if any
+     * @param outcome outcome of the command
+     */
+    static void commitCommand( Object event, char type, String side, long price, long size, CommandResult outcome ) {
+    }
+
+    static void levelCreated( int price, BasicOrder.OrderSide side ) {
+    }
+
+    static void levelRemoved( int price, BasicOrder.OrderSide side ) {
+    }
+
+    /**
+     * @return started sweep event, or null if it's disabled
+     */
+    static Object beginSweep() {
+        return null;
+    }
+
+    /**
+     * @param event  event returned by {@link #beginSweep()}
+     * @param side   side of the book consumed
+     * @param size   size requested
+     * @param filled size dealt
+     * @param levels count of price levels touched
+     * @param orders count of orders consumed completely
+     */
+    static void commitSweep( Object event, BasicOrder.OrderSide side, int size, int filled, int levels, int orders ) {
+    }
+}
@@ -0,0 +1,160 @@
+package com.bookmap.ordermanagement;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Indexed replay of a commands file. The file is replayed once, and every @checkpointInterval commands
+ * a {@link BookSnapshot} is stored together with the command number and the byte offset of the next command.
+ * The state of the {@link OrdersBook} after any command k is then rebuilt from the nearest checkpoint
+ * preceding k by replaying only the tail of at most @checkpointInterval commands.
+ * <p>
+ * Commands are counted by lines of the file. Queries don't change the book, so they are skipped on replay.
+ */
+public class IndexedReplay {
+
+    /**
+     * State of the book captured after particular command
+     */
+    private static class Checkpoint {
+        final long         command;
+        final long         offset;
+        final BookSnapshot snapshot;
+
+        Checkpoint( long command, long offset, BookSnapshot snapshot ) {
+            this.command = command;
+            this.offset = offset;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private final Path             file;
+    private final int              checkpointInterval;
+    private final boolean          skipInvalidOperations;
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+    private       long             commandsCount;
+
+    private IndexedReplay( Path file, int checkpointInterval, boolean skipInvalidOperations ) {
+        if (checkpointInterval <= 0)
+            throw new IllegalArgumentException("Checkpoint interval should be positive.");
+        this.file = file;
+        this.checkpointInterval = checkpointInterval;
+        this.skipInvalidOperations = skipInvalidOperations;
+    }
+
+    /**
+     * Replays the whole @file and builds its checkpoints index
+     *
+     * @param file                  commands file to index
+     * @param checkpointInterval    count of commands between checkpoints
+     * @param skipInvalidOperations setting this flag to false will lead to exit program
+     *                              if invalid command line occur
+     * @return index of the file
+     */
+    public static IndexedReplay build( Path file, int checkpointInterval, boolean skipInvalidOperations )
+            throws IOException
+    {
+        IndexedReplay replay = new IndexedReplay(file, checkpointInterval, skipInvalidOperations);
+        replay.index();
+        return replay;
+    }
+
+    private void index() throws IOException {
+        OrdersBook ordersBook = new OrdersBook(skipInvalidOperations);
+        BasicOrderManagement dispatcher = new BasicOrderManagement(ordersBook, System.out);
+        checkpoints.add(new Checkpoint(0, 0, ordersBook.snapshot()));
+        try (FileChannel channel = FileChannel.open(file)) {
+            LineReader reader = new LineReader(channel, 0);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                replayCommand(dispatcher, line);
+                if (++commandsCount % checkpointInterval == 0) {
+                    checkpoints.add(new Checkpoint(commandsCount, reader.getOffset(), ordersBook.snapshot()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the state of the book right after @command has been processed
+     *
+     * @param command number of the command, starting from 1; 0 stands for the empty book
+     * @return a new Order Book instance
+     * @throws EOFException if the file ends before @command, i.e. it has been truncated since indexing
+     */
+    public OrdersBook bookAt( long command ) throws IOException {
+        if (command < 0 || command > commandsCount)
+            throw new IllegalArgumentException(String.format("Command #%d is out of range [0, %d]",
+                                                             command, commandsCount));
+        Checkpoint checkpoint = checkpoints.get((int) (command / checkpointInterval));
+        OrdersBook ordersBook = new OrdersBook(checkpoint.snapshot, skipInvalidOperations);
+        if (checkpoint.command == command) return ordersBook;
+        BasicOrderManagement dispatcher = new BasicOrderManagement(ordersBook, System.out);
+        try (FileChannel channel = FileChannel.open(file)) {
+            channel.position(checkpoint.offset);
+            LineReader reader = new LineReader(channel, checkpoint.offset);
+            for (long i = checkpoint.command; i < command; i++) {
+                final String line = reader.readLine();
+                if (line == null)
+                    throw new EOFException(String.format("Command #%d is past the end of %s, it has %d commands",
+                                                         command, file, i));
+                replayCommand(dispatcher, line);
+            }
+        }
+        return ordersBook;
+    }
+
+    public long getCommandsCount() {
+        return commandsCount;
+    }
+
+    public int getCheckpointsCount() {
+        return checkpoints.size();
+    }
+
+    private static void replayCommand( BasicOrderManagement dispatcher, String line ) {
+        if (line.isEmpty() || line.charAt(0) == 'q') return;
+        dispatcher.dispatchCommand(line);
+    }
+
+    /**
+     * Reads lines of ASCII commands keeping track of the byte offset in the file
+     */
+    private static class LineReader {
+        private final InputStream in;
+        private       long        offset;
+        private       byte[]      buffer = new byte[64];
+
+        LineReader( FileChannel channel, long offset ) {
+            this.in = new BufferedInputStream(Channels.newInputStream(channel));
+            this.offset = offset;
+        }
+
+        String readLine() throws IOException {
+            int length = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b == '\n') break;
+                if (length == buffer.length) buffer = Arrays.copyOf(buffer, length * 2);
+                buffer[length++] = (byte) b;
+            }
+            if (b == -1 && length == 0) return null;
+            if (length > 0 && buffer[length - 1] == '\r') length--;
+            return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+        }
+
+        long getOffset() {
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.bookmap.ordermanagement;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteOrder;
+
+/**
+ * Layout of the memory-mapped file written by {@link MappedBookPublisher} and read by {@link MappedBookReader}.
+ * All values are little-endian:
+ * <pre>
+ *  0  int  magic "BOOK"
+ *  4  int  layout version
+ *  8  int  depth N, the count of level slots per side
+ * 16  long sequence, odd while the publisher is writing
+ * 24  long total bid size
+ * 32  long total ask size
+ * 40  long total bid orders
+ * 48  long total ask orders
+ * 56  int  count of published bid levels, up to N
+ * 60  int  count of published ask levels, up to N
+ * 64  N x (int price, int size) bid levels, the best one first
+ *     N x (int price, int size) ask levels, the best one first
+ * </pre>
+ * Readers follow the sequence lock protocol: read the sequence, retry while it's odd, copy the data
+ * and accept the copy only if the sequence hasn't changed.
+ */
+final class MappedBookLayout {
+
+    static final int       MAGIC     = 0x4B4F4F42;
+    static final int       VERSION   = 1;
+    static final int       MAX_DEPTH = 1 << 16;
+    static final ByteOrder ORDER     = ByteOrder.LITTLE_ENDIAN;
+
+    static final int MAGIC_OFFSET      = 0;
+    static final int VERSION_OFFSET    = 4;
+    static final int DEPTH_OFFSET      = 8;
+    static final int SEQUENCE_OFFSET   = 16;
+    static final int BID_SIZE_OFFSET   = 24;
+    static final int ASK_SIZE_OFFSET   = 32;
+    static final int BID_ORDERS_OFFSET = 40;
+    static final int ASK_ORDERS_OFFSET = 48;
+    static final int BID_LEVELS_OFFSET = 56;
+    static final int ASK_LEVELS_OFFSET = 60;
+    static final int LEVELS_OFFSET     = 64;
+    static final int LEVEL_BYTES       = 8;
+
+    /**
+     * Written and read to order accesses of the mapped buffer: a volatile store followed by a volatile load
+     * keeps both earlier and later memory accesses on their side of the pair.
+     */
+    private static volatile int fence;
+
+    /**
+     * Thread.onSpinWait() where it's available (Java 9+), otherwise a method doing nothing
+     */
+    private static final MethodHandle SPIN_WAIT = spinWaitHandle();
+
+    private MappedBookLayout() {
+    }
+
+    static int fileSize( int depth ) {
+        return LEVELS_OFFSET + 2 * depth * LEVEL_BYTES;
+    }
+
+    static int bidLevelOffset( int level ) {
+        return LEVELS_OFFSET + level * LEVEL_BYTES;
+    }
+
+    static int askLevelOffset( int depth, int level ) {
+        return LEVELS_OFFSET + (depth + level) * LEVEL_BYTES;
+    }
+
+    static int fullFence() {
+        fence = 0;
+        return fence;
+    }
+
+    /**
+     * Hints the processor that the caller is spinning until the publisher completes writing
+     */
+    static void onSpinWait() {
+        try {
+            SPIN_WAIT.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void noSpinWait() {
+    }
+
+    private static MethodHandle spinWaitHandle() {
+        final MethodType type = MethodType.methodType(void.class);
+        try {
+            return MethodHandles.publicLookup().findStatic(Thread.class, "onSpinWait", type);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            try {
+                return MethodHandles.lookup().findStatic(MappedBookLayout.class, "noSpinWait", type);
+            } catch (NoSuchMethodException | IllegalAccessException impossible) {
+                throw new IllegalStateException(impossible);
+            }
+        }
+    }
+}
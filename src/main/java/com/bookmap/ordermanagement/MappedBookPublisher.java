@@ -0,0 +1,88 @@
+package com.bookmap.ordermanagement;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.bookmap.ordermanagement.MappedBookLayout.*;
+
+/**
+ * Mirrors totals and the best N levels of each side of an {@link OrdersBook} into a memory-mapped file,
+ * so processes on the same host read the book with {@link MappedBookReader} without any copying over sockets.
+ * See {@link MappedBookLayout} for the layout of the file.
+ * <p>
+ * {@link #publish(OrdersBook)} should be called on the matching thread after mutations of the book,
+ * it takes O(N * log(levels)) and doesn't allocate.
+ */
+public class MappedBookPublisher implements AutoCloseable {
+
+    private final FileChannel      channel;
+    private final MappedByteBuffer buffer;
+    private final int              depth;
+
+    private final int[] prices;
+    private final int[] sizes;
+
+    private long sequence;
+
+    /**
+     * Creates or truncates the @file and maps it
+     *
+     * @param file  file to publish the book to
+     * @param depth count of the best levels published per side
+     */
+    public MappedBookPublisher( Path file, int depth ) throws IOException {
+        if (depth <= 0 || depth > MAX_DEPTH)
+            throw new IllegalArgumentException(String.format("Depth should be within [1, %d]", MAX_DEPTH));
+        this.depth = depth;
+        prices = new int[depth];
+        sizes = new int[depth];
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                   StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(depth));
+        buffer.order(ORDER);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putInt(DEPTH_OFFSET, depth);
+        buffer.putLong(SEQUENCE_OFFSET, 0);
+        fullFence();
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+    }
+
+    /**
+     * Writes the current state of the @book
+     *
+     * @param book order book to publish
+     */
+    public void publish( OrdersBook book ) {
+        buffer.putLong(SEQUENCE_OFFSET, ++sequence);
+        fullFence();
+        buffer.putLong(BID_SIZE_OFFSET, book.totalSize(BasicOrder.OrderSide.BID));
+        buffer.putLong(ASK_SIZE_OFFSET, book.totalSize(BasicOrder.OrderSide.ASK));
+        buffer.putLong(BID_ORDERS_OFFSET, book.totalOrders(BasicOrder.OrderSide.BID));
+        buffer.putLong(ASK_ORDERS_OFFSET, book.totalOrders(BasicOrder.OrderSide.ASK));
+        final int bidLevels = book.copyTopLevels(BasicOrder.OrderSide.BID, prices, sizes);
+        buffer.putInt(BID_LEVELS_OFFSET, bidLevels);
+        for (int level = 0; level < bidLevels; level++) {
+            buffer.putInt(bidLevelOffset(level), prices[level]);
+            buffer.putInt(bidLevelOffset(level) + 4, sizes[level]);
+        }
+        final int askLevels = book.copyTopLevels(BasicOrder.OrderSide.ASK, prices, sizes);
+        buffer.putInt(ASK_LEVELS_OFFSET, askLevels);
+        for (int level = 0; level < askLevels; level++) {
+            buffer.putInt(askLevelOffset(depth, level), prices[level]);
+            buffer.putInt(askLevelOffset(depth, level) + 4, sizes[level]);
+        }
+        fullFence();
+        buffer.putLong(SEQUENCE_OFFSET, ++sequence);
+    }
+
+    /**
+     * Closes the file. The mapping itself is released when the publisher is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,172 @@
+package com.bookmap.ordermanagement;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.bookmap.ordermanagement.MappedBookLayout.*;
+
+/**
+ * Reads consistent snapshots of the book published by {@link MappedBookPublisher}, possibly from another
+ * process. Reading is a copy out of the shared memory without system calls or allocations,
+ * it's retried while the publisher is writing.
+ */
+public class MappedBookReader implements AutoCloseable {
+
+    /**
+     * Reusable copy of the published book
+     */
+    public static class View {
+        private final int[] bidPrices;
+        private final int[] bidSizes;
+        private final int[] askPrices;
+        private final int[] askSizes;
+        private       int   bidLevels;
+        private       int   askLevels;
+        private       long  bidSize;
+        private       long  askSize;
+        private       long  bidOrders;
+        private       long  askOrders;
+
+        View( int depth ) {
+            bidPrices = new int[depth];
+            bidSizes = new int[depth];
+            askPrices = new int[depth];
+            askSizes = new int[depth];
+        }
+
+        /**
+         * @return count of the bid levels in the view, the best one has number 0
+         */
+        public int getBidLevels() {
+            return bidLevels;
+        }
+
+        public int getBidPrice( int level ) {
+            return bidPrices[level];
+        }
+
+        public int getBidSize( int level ) {
+            return bidSizes[level];
+        }
+
+        /**
+         * @return count of the ask levels in the view, the best one has number 0
+         */
+        public int getAskLevels() {
+            return askLevels;
+        }
+
+        public int getAskPrice( int level ) {
+            return askPrices[level];
+        }
+
+        public int getAskSize( int level ) {
+            return askSizes[level];
+        }
+
+        public long getTotalBidSize() {
+            return bidSize;
+        }
+
+        public long getTotalAskSize() {
+            return askSize;
+        }
+
+        public long getTotalBidOrders() {
+            return bidOrders;
+        }
+
+        public long getTotalAskOrders() {
+            return askOrders;
+        }
+    }
+
+    private final FileChannel      channel;
+    private final MappedByteBuffer buffer;
+    private final int              depth;
+
+    /**
+     * Maps the @file written by a {@link MappedBookPublisher}
+     *
+     * @param file published book file
+     * @throws IllegalArgumentException if the file isn't a published book of the supported version
+     */
+    public MappedBookReader( Path file ) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() < LEVELS_OFFSET)
+                throw new IllegalArgumentException(file + " is not a published book");
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, LEVELS_OFFSET);
+            header.order(ORDER);
+            if (header.getInt(MAGIC_OFFSET) != MAGIC)
+                throw new IllegalArgumentException(file + " is not a published book");
+            if (header.getInt(VERSION_OFFSET) != VERSION)
+                throw new IllegalArgumentException(String.format("Unsupported layout version %d of %s",
+                                                                 header.getInt(VERSION_OFFSET), file));
+            depth = header.getInt(DEPTH_OFFSET);
+            if (depth <= 0 || depth > MAX_DEPTH || channel.size() < fileSize(depth))
+                throw new IllegalArgumentException(file + " is truncated");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize(depth));
+            buffer.order(ORDER);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a view able to hold the published levels
+     */
+    public View newView() {
+        return new View(depth);
+    }
+
+    /**
+     * Copies a consistent state of the published book into the @view
+     *
+     * @param view view created by {@link #newView()}
+     * @return number of the publication the state comes from, 0 if nothing has been published yet
+     */
+    public long read( View view ) {
+        for (;;) {
+            final long before = buffer.getLong(SEQUENCE_OFFSET);
+            // the fence also keeps the sequence from being read once for the whole spin
+            fullFence();
+            if ((before & 1) != 0) {
+                onSpinWait();
+                continue;
+            }
+            view.bidSize = buffer.getLong(BID_SIZE_OFFSET);
+            view.askSize = buffer.getLong(ASK_SIZE_OFFSET);
+            view.bidOrders = buffer.getLong(BID_ORDERS_OFFSET);
+            view.askOrders = buffer.getLong(ASK_ORDERS_OFFSET);
+            view.bidLevels = Math.min(Math.max(buffer.getInt(BID_LEVELS_OFFSET), 0), depth);
+            view.askLevels = Math.min(Math.max(buffer.getInt(ASK_LEVELS_OFFSET), 0), depth);
+            for (int level = 0; level < view.bidLevels; level++) {
+                view.bidPrices[level] = buffer.getInt(bidLevelOffset(level));
+                view.bidSizes[level] = buffer.getInt(bidLevelOffset(level) + 4);
+            }
+            for (int level = 0; level < view.askLevels; level++) {
+                view.askPrices[level] = buffer.getInt(askLevelOffset(depth, level));
+                view.askSizes[level] = buffer.getInt(askLevelOffset(depth, level) + 4);
+            }
+            fullFence();
+            if (buffer.getLong(SEQUENCE_OFFSET) == before) return before >>> 1;
+        }
+    }
+
+    /**
+     * @return depth of the published book
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -4,7 +4,6 @@ import java.lang.invoke.MethodHandles;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 /**
  * {@link OrdersBook} holds collection of {@link BasicOrder}s and provides
@@ -17,7 +16,7 @@ public class OrdersBook {
     /**
      * Price Level contains all orders of the same price.
      */
-    private static class PriceLevel implements Comparable<PriceLevel> {
+    private static class PriceLevel {
         /**
          * actual Size of the price level(sum of sizes of all orders at current price level)
          */
@@ -26,9 +25,10 @@ public class OrdersBook {
         final int price;
 
         /**
-         * Orders contained at particular price level
+         * First and last orders of the FIFO queue of the level, linked through the orders themselves
          */
-        final Queue<BasicOrder> orders = new LinkedList<>();
+        BasicOrder firstOrder;
+        BasicOrder lastOrder;
 
         private PriceLevel( int price ) {
             if (price == 0)
@@ -36,11 +36,6 @@ public class OrdersBook {
             this.price = price;
         }
 
-        private PriceLevel() {
-            price = 0;
-            size = 0;
-        }
-
         int getSize() {
             return size;
         }
@@ -50,22 +45,40 @@ public class OrdersBook {
         }
 
         void addOrder( BasicOrder order ) {
-            orders.offer(order);
+            order.levelPrev = lastOrder;
+            order.levelNext = null;
+            if (lastOrder == null) {
+                firstOrder = order;
+            } else {
+                lastOrder.levelNext = order;
+            }
+            lastOrder = order;
             size += order.getSize();
         }
 
-        void removeOrder( BasicOrder order ) {
-            orders.remove(order);
-            size -= order.getSize();
-        }
-
-        @Override
-        public int compareTo( PriceLevel other ) {
-            return price - other.price;
+        BasicOrder removeFirstOrder() {
+            BasicOrder order = firstOrder;
+            removeOrder(order);
+            return order;
         }
 
-        static Comparator<PriceLevel> reverseComparator() {
-            return ( pl1, pl2 ) -> -pl1.compareTo(pl2);
+        /**
+         * Unlinks the @order from any place of the queue
+         */
+        void removeOrder( BasicOrder order ) {
+            if (order.levelPrev == null) {
+                firstOrder = order.levelNext;
+            } else {
+                order.levelPrev.levelNext = order.levelNext;
+            }
+            if (order.levelNext == null) {
+                lastOrder = order.levelPrev;
+            } else {
+                order.levelNext.levelPrev = order.levelPrev;
+            }
+            order.levelPrev = null;
+            order.levelNext = null;
+            size -= order.getSize();
         }
 
         public int getPrice() {
@@ -73,66 +86,85 @@ public class OrdersBook {
         }
 
         BasicOrder getFirstOrder() {
-            return orders.peek();
+            return firstOrder;
         }
 
         private void setSize( int size ) {
             this.size = size;
         }
 
-        static private final PriceLevel EMPTY_PRICE_LEVEL = new PriceLevel() {
-            @Override
-            public int getSize() {
-                return 0;
+        public String getOrdersStat() {
+            StringJoiner stat = new StringJoiner(", ", "[", "]");
+            for (BasicOrder order = firstOrder; order != null; order = order.levelNext) {
+                stat.add(String.valueOf(order.getSize()));
             }
+            return stat.toString();
+        }
+    }
 
-            @Override
-            void addOrder( BasicOrder order ) {
-                throw new UnsupportedOperationException();
-            }
+    /**
+     * Tracks actual best Bid, 0 if there are no bids. It's found by the price level index when the best level
+     * is removed.
+     */
+    private int bestBid;
 
-            @Override
-            void removeOrder( BasicOrder order ) {
-                throw new UnsupportedOperationException();
-            }
+    /**
+     * Tracks actual best Ask, 0 if there are no asks
+     */
+    private int bestAsk;
 
-            @Override
-            public int compareTo( PriceLevel other ) {
-                return super.compareTo(other);
-            }
+    /**
+     * Holds all orders divided into price levels by price
+     */
+    private final PriceLevelMap<PriceLevel> priceLevels;
 
-            @Override
-            public int getPrice() {
-                return 0;
-            }
-        };
+    /**
+     * Prefix sums of resting bids size by price
+     */
+    private final PriceLevelIndex bidIndex;
 
-        int getOrdersCount() {
-            return orders.size();
-        }
+    /**
+     * Prefix sums of resting asks size by price
+     */
+    private final PriceLevelIndex askIndex;
 
-        public String getOrdersStat() {
-            return orders.stream()
-                         .map(BasicOrder::getSize)
-                         .map(String::valueOf)
-                         .collect(Collectors.joining(", ", "[", "]"));
-        }
-    }
+    /**
+     * Schedules expiry of the orders which have got expiry time, holds current logical time of the book
+     */
+    private final TimingWheel expiries = new TimingWheel(this::expire);
+
+    /**
+     * Pending stop orders, executed once the best price crosses their trigger
+     */
+    private final TriggerBook triggers = new TriggerBook();
+
+    /**
+     * Receives fills of the resting orders consumed by buy/sell deals
+     */
+    private FillListener fillListener = FillListener.NONE;
 
     /**
-     * Tracks actual best Bid
+     * Setting this flag to false makes invalid orders throw instead of being rejected with a reason code
      */
-    private final PriorityQueue<PriceLevel> bids;
+    private final boolean skipInvalidOperations;
 
     /**
-     * Tracks actual best Ask
+     * Count of rejected orders per reason
      */
-    private final PriorityQueue<PriceLevel> asks;
+    private final long[] rejectedCounts = new long[CommandResult.values().length];
 
     /**
-     * Holds all orders divided into price levels
+     * Subscriptions to top of book changes, the array is replaced on subscribe and unsubscribe
      */
-    private final HashMap<Integer, PriceLevel> orders;
+    private volatile TopOfBookSubscription[] subscriptions = new TopOfBookSubscription[0];
+
+    /**
+     * Top of book last published to the subscriptions
+     */
+    private int publishedBidPrice;
+    private int publishedBidSize;
+    private int publishedAskPrice;
+    private int publishedAskSize;
 
     public OrdersBook( boolean skipInvalidOperations ) {
         this(1, skipInvalidOperations);
@@ -150,56 +182,347 @@ public class OrdersBook {
      *                              if invalid command line occur
      */
     public OrdersBook( int size, boolean skipInvalidOperations ) {
-        int halfSize = size / 2;
-        if (halfSize == 0) halfSize = 1;
-        bids = new PriorityQueue<>(halfSize, PriceLevel.reverseComparator());
-        asks = new PriorityQueue<>(halfSize);
-        orders = new HashMap<>(size);
+        priceLevels = new PriceLevelMap<>(size);
+        bidIndex = new PriceLevelIndex();
+        askIndex = new PriceLevelIndex();
+        this.skipInvalidOperations = skipInvalidOperations;
+    }
+
+    /**
+     * Constructs Order Book instance holding the state captured by @snapshot
+     *
+     * @param snapshot              state of the Order Book to restore
+     * @param skipInvalidOperations setting this flag to false will lead to exit program
+     *                              if invalid command line occur
+     */
+    public OrdersBook( BookSnapshot snapshot, boolean skipInvalidOperations ) {
+        this(snapshot.getLevelsCount(), skipInvalidOperations);
+        expiries.advance(snapshot.getTime());
+        int order = 0;
+        for (int level = 0; level < snapshot.getLevelsCount(); level++) {
+            final int price = snapshot.getPrice(level);
+            final BasicOrder.OrderSide side = level < snapshot.getBidLevels()
+                                              ? BasicOrder.OrderSide.BID
+                                              : BasicOrder.OrderSide.ASK;
+            for (int i = 0; i < snapshot.getOrdersCount(level); i++, order++) {
+                addOrder(new BasicOrder(price, snapshot.getOrderSize(order), side, snapshot.getOrderExpiry(order)));
+            }
+        }
+        for (int stop = 0; stop < snapshot.getStopsCount(); stop++) {
+            triggers.add(new TriggerBook.Stop(stop < snapshot.getBuyStops(), snapshot.getStopTrigger(stop),
+                                              snapshot.getStopSize(stop)));
+        }
+    }
+
+    /**
+     * Captures current state of the Order Book
+     *
+     * @return compact copy of all price levels and orders
+     */
+    public BookSnapshot snapshot() {
+        final int bidLevels = bidIndex.totalLevels();
+        final int levelsCount = bidLevels + askIndex.totalLevels();
+        int[] prices = new int[levelsCount];
+        int[] ordersCounts = new int[levelsCount];
+        final int ordersCount = (int) (bidIndex.totalOrders() + askIndex.totalOrders());
+        int[] orderSizes = new int[ordersCount];
+        long[] orderExpiries = new long[ordersCount];
+        int order = 0;
+        for (int level = 0; level < levelsCount; level++) {
+            final int price = level < bidLevels ? bidIndex.priceOfLevel(level + 1)
+                                                : askIndex.priceOfLevel(level - bidLevels + 1);
+            prices[level] = price;
+            final int levelFrom = order;
+            for (BasicOrder basicOrder = priceLevels.get(price).getFirstOrder(); basicOrder != null;
+                 basicOrder = basicOrder.levelNext) {
+                orderSizes[order] = basicOrder.getSize();
+                orderExpiries[order++] = basicOrder.getExpireAt();
+            }
+            ordersCounts[level] = order - levelFrom;
+        }
+        int[] stopTriggers = new int[triggers.size()];
+        int[] stopSizes = new int[triggers.size()];
+        final int buyStops = triggers.copyStops(true, stopTriggers, stopSizes, 0);
+        triggers.copyStops(false, stopTriggers, stopSizes, buyStops);
+        return new BookSnapshot(bidLevels, prices, ordersCounts, orderSizes, orderExpiries, expiries.getTime(),
+                                buyStops, stopTriggers, stopSizes);
+    }
+
+    /**
+     * Sets the listener notified of every resting order consumed or partially consumed by buy/sell deals
+     *
+     * @param fillListener listener of the fills, or null to stop notifications
+     */
+    public void setFillListener( FillListener fillListener ) {
+        this.fillListener = fillListener == null ? FillListener.NONE : fillListener;
+    }
+
+    /**
+     * Subscribes to changes of the best bid, best ask and sizes of their levels. The subscription may be used
+     * from any thread, it receives the current state with the next change of the book.
+     *
+     * @return a new subscription
+     */
+    public TopOfBookSubscription subscribeTopOfBook() {
+        TopOfBookSubscription subscription = new TopOfBookSubscription();
+        synchronized (this) {
+            TopOfBookSubscription[] current = subscriptions;
+            TopOfBookSubscription[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = subscription;
+            subscriptions = updated;
+        }
+        return subscription;
+    }
+
+    /**
+     * Stops publishing top of book changes to the @subscription
+     *
+     * @param subscription subscription returned by {@link #subscribeTopOfBook()}
+     */
+    public synchronized void unsubscribe( TopOfBookSubscription subscription ) {
+        subscriptions = Arrays.stream(subscriptions)
+                              .filter(s -> s != subscription)
+                              .toArray(TopOfBookSubscription[]::new);
+    }
+
+    /**
+     * Publishes top of book to the subscriptions if it has changed since the last publication.
+     * Subscriptions which haven't got any state yet receive it regardless.
+     */
+    private void publishTopOfBook() {
+        final TopOfBookSubscription[] current = subscriptions;
+        if (current.length == 0) return;
+        final int bidPrice = bestBid;
+        final int bidSize = bestBid == 0 ? 0 : priceLevels.get(bestBid).getSize();
+        final int askPrice = bestAsk;
+        final int askSize = bestAsk == 0 ? 0 : priceLevels.get(bestAsk).getSize();
+        final boolean changed = bidPrice != publishedBidPrice || bidSize != publishedBidSize
+                || askPrice != publishedAskPrice || askSize != publishedAskSize;
+        publishedBidPrice = bidPrice;
+        publishedBidSize = bidSize;
+        publishedAskPrice = askPrice;
+        publishedAskSize = askSize;
+        for (TopOfBookSubscription subscription : current) {
+            if (changed || subscription.isEmpty()) subscription.publish(bidPrice, bidSize, askPrice, askSize);
+        }
     }
 
     /**
      * Append a new Bid or Ask into Order Book
      *
      * @param newOrder Bid or Ask order to be added into Order Book
+     * @throws CommandRejectedException if the order has expired or crosses the spread
      */
     public void addOrder( BasicOrder newOrder ) {
-        if (newOrder.getSide() == BasicOrder.OrderSide.ASK) {
-            setAsk(newOrder);
-        } else {
-            setBid(newOrder);
+        if (hasExpired(newOrder.getExpireAt())) {
+            rejectedCounts[CommandResult.ORDER_EXPIRED.ordinal()]++;
+            throw new CommandRejectedException(CommandResult.ORDER_EXPIRED,
+                                               CommandResult.ORDER_EXPIRED.getDescription());
+        }
+        if (crossesSpread(newOrder.getPrice(), newOrder.getSide())) {
+            rejectedCounts[CommandResult.CROSSED_SPREAD.ordinal()]++;
+            throw new CommandRejectedException(CommandResult.CROSSED_SPREAD,
+                                               crossedSpreadMessage(newOrder.getPrice(), newOrder.getSize(),
+                                                                    newOrder.getSide()));
         }
+        placeOrder(newOrder);
+    }
+
+    /**
+     * Append a new Bid or Ask into Order Book without throwing on invalid orders, unless
+     * the book is constructed not to skip invalid operations
+     *
+     * @param price price of the new order
+     * @param size  size of the new order
+     * @param side  side of the new order
+     * @return ACCEPTED or the reason of rejection
+     */
+    public CommandResult tryAddOrder( int price, int size, BasicOrder.OrderSide side ) {
+        return tryAddOrder(price, size, side, 0);
+    }
+
+    /**
+     * Append a new Bid or Ask which expires at @expireAt into Order Book without throwing on invalid orders,
+     * unless the book is constructed not to skip invalid operations
+     *
+     * @param price    price of the new order
+     * @param size     size of the new order
+     * @param side     side of the new order
+     * @param expireAt logical time the order expires at, 0 if the order is good till cancel
+     * @return ACCEPTED or the reason of rejection
+     */
+    public CommandResult tryAddOrder( int price, int size, BasicOrder.OrderSide side, long expireAt ) {
+        CommandResult result = price <= 0
+                               ? CommandResult.INVALID_PRICE
+                               : size <= 0
+                                 ? CommandResult.INVALID_SIZE
+                                 : expireAt < 0 || hasExpired(expireAt)
+                                   ? CommandResult.ORDER_EXPIRED
+                                   : crossesSpread(price, side) ? CommandResult.CROSSED_SPREAD
+                                                                : CommandResult.ACCEPTED;
+        if (result != CommandResult.ACCEPTED) return rejectOrders(result, price, size, side, 1);
+        placeOrder(new BasicOrder(price, size, side, expireAt));
+        return result;
+    }
+
+    /**
+     * @return true if an order expiring at @expireAt has already expired
+     */
+    private boolean hasExpired( long expireAt ) {
+        return expireAt != 0 && expireAt <= expiries.getTime();
+    }
+
+    private CommandResult rejectOrders( CommandResult result, int price, int size, BasicOrder.OrderSide side,
+                                        int count )
+    {
+        rejectedCounts[result.ordinal()] += count;
+        if (!skipInvalidOperations) {
+            throw new CommandRejectedException(result, result == CommandResult.CROSSED_SPREAD
+                                                       ? crossedSpreadMessage(price, size, side)
+                                                       : result.getDescription());
+        }
+        return result;
+    }
+
+    /**
+     * Places a stop order which executes a buy or sell of @size units once the best price crosses @trigger:
+     * a buy stop when the best ask reaches @trigger or goes above it, a sell stop when the best bid reaches
+     * @trigger or goes below it. A stop already crossed by the best price is rejected.
+     *
+     * @param buy     true for a buy stop, false for a sell stop
+     * @param trigger trigger price
+     * @param size    quantity of units to buy or sell
+     * @return ACCEPTED or the reason of rejection
+     */
+    public CommandResult tryAddStop( boolean buy, int trigger, int size ) {
+        CommandResult result = trigger <= 0
+                               ? CommandResult.INVALID_PRICE
+                               : size <= 0
+                                 ? CommandResult.INVALID_SIZE
+                                 : TriggerBook.crosses(buy, trigger, bestBid, bestAsk)
+                                   ? CommandResult.TRIGGER_CROSSED
+                                   : CommandResult.ACCEPTED;
+        if (result != CommandResult.ACCEPTED) return rejectStop(result, buy, trigger, size);
+        triggers.add(new TriggerBook.Stop(buy, trigger, size));
+        return result;
+    }
+
+    private CommandResult rejectStop( CommandResult result, boolean buy, int trigger, int size ) {
+        rejectedCounts[result.ordinal()]++;
+        if (!skipInvalidOperations) {
+            throw new CommandRejectedException(result, result == CommandResult.TRIGGER_CROSSED
+                                                       ? triggerCrossedMessage(buy, trigger, size)
+                                                       : String.format("%s! %s stop = (%d, %d)",
+                                                                       result.getDescription(),
+                                                                       buy ? "Buy" : "Sell", trigger, size));
+        }
+        return result;
+    }
+
+    private String triggerCrossedMessage( boolean buy, int trigger, int size ) {
+        return buy
+               ? String.format("Trigger price is already crossed! Buy stop = (%d, %d), BestAsk = %d",
+                               trigger, size, bestAsk)
+               : String.format("Trigger price is already crossed! Sell stop = (%d, %d), BestBid = %d",
+                               trigger, size, bestBid);
+    }
+
+    /**
+     * @return count of stop orders waiting for their trigger
+     */
+    public int getStopsCount() {
+        return triggers.size();
     }
 
-    private void setBid( BasicOrder order ) {
-        PriceLevel bestAsk = asks.peek();
-        if (bestAsk != null && order.getPrice() >= bestAsk.getPrice()) {
-            throw new IllegalArgumentException(String.format(
-                    "Spread should remain positive! Bid = (%d, %d), BestAsk = %d",
-                    order.getPrice(),
-                    order.getSize(),
-                    bestAsk.getPrice())
-            );
+    /**
+     * Appends @count orders of the same price and side into Order Book in one level update.
+     * The orders are queued in the order of @sizes and are either all accepted or all rejected,
+     * since none of them changes the opposite side, and neither do the stops they may trigger.
+     * If the side is empty while stops are pending, the orders are placed one by one, so the stops
+     * fire right after the first order like they do with single adds.
+     *
+     * @param price price of the new orders
+     * @param sizes sizes of the new orders
+     * @param from  index of the first size
+     * @param count count of the new orders
+     * @param side  side of the new orders
+     * @return ACCEPTED or the reason of rejection
+     */
+    public CommandResult tryAddOrders( int price, int[] sizes, int from, int count, BasicOrder.OrderSide side ) {
+        long totalSize = 0;
+        for (int i = from; i < from + count; i++) {
+            if (sizes[i] <= 0) return rejectOrders(CommandResult.INVALID_SIZE, price, sizes[i], side, count);
+            totalSize += sizes[i];
+        }
+        if (price <= 0) return rejectOrders(CommandResult.INVALID_PRICE, price, sizes[from], side, count);
+        if (crossesSpread(price, side))
+            return rejectOrders(CommandResult.CROSSED_SPREAD, price, sizes[from], side, count);
+        final boolean ask = side == BasicOrder.OrderSide.ASK;
+        if ((ask ? bestAsk : bestBid) == 0 && !triggers.isEmpty()) {
+            for (int i = from; i < from + count; i++) {
+                placeOrder(new BasicOrder(price, sizes[i], side));
+            }
+            return CommandResult.ACCEPTED;
         }
-        PriceLevel priceLevel = arrangeToPriceLevel(order, bids);
-        LOGGER.log(Level.FINE,
-                   "price level {0,number}: bids {1}",
-                   new Object[] { priceLevel.getPrice(), priceLevel.getOrdersStat() });
-    }
-
-    private void setAsk( BasicOrder order ) {
-        PriceLevel bestBid = bids.peek();
-        if (bestBid != null && order.getPrice() <= bestBid.getPrice()) {
-            throw new IllegalArgumentException(String.format(
-                    "Spread should remain positive! Ask = (%d, %d), BestBid = %d",
-                    order.getPrice(),
-                    order.getSize(),
-                    bestBid.getPrice())
-            );
+        PriceLevel priceLevel = priceLevels.get(price);
+        final boolean levelIsPresent = priceLevel != null;
+        if (!levelIsPresent) priceLevel = createLevel(price, side);
+        for (int i = from; i < from + count; i++) {
+            priceLevel.addOrder(new BasicOrder(price, sizes[i], side));
         }
-        PriceLevel priceLevel = arrangeToPriceLevel(order, asks);
-        LOGGER.log(Level.FINE,
-                   "price level {0,number}: asks {1}",
-                   new Object[] { priceLevel.getPrice(), priceLevel.getOrdersStat() });
+        indexOf(side).update(price, totalSize, count, levelIsPresent ? 0 : 1);
+        publishTopOfBook();
+        if (LOGGER.isLoggable(Level.FINE))
+            LOGGER.log(Level.FINE,
+                       "price level {0,number}: {1} {2}",
+                       new Object[] { priceLevel.getPrice(), ask ? "asks" : "bids", priceLevel.getOrdersStat() });
+        return CommandResult.ACCEPTED;
+    }
+
+    /**
+     * @return false if invalid orders and commands should stop the processing instead of being rejected
+     */
+    public boolean skipsInvalidOperations() {
+        return skipInvalidOperations;
+    }
+
+    /**
+     * @param reason reason of rejection
+     * @return count of orders rejected for the @reason
+     */
+    public long getRejectedCount( CommandResult reason ) {
+        return rejectedCounts[reason.ordinal()];
+    }
+
+    private boolean crossesSpread( int price, BasicOrder.OrderSide side ) {
+        if (side == BasicOrder.OrderSide.ASK)
+            return bestBid != 0 && price <= bestBid;
+        return bestAsk != 0 && price >= bestAsk;
+    }
+
+    private String crossedSpreadMessage( int price, int size, BasicOrder.OrderSide side ) {
+        return side == BasicOrder.OrderSide.ASK
+               ? String.format("Spread should remain positive! Ask = (%d, %d), BestBid = %d",
+                               price, size, bestBid)
+               : String.format("Spread should remain positive! Bid = (%d, %d), BestAsk = %d",
+                               price, size, bestAsk);
+    }
+
+    /**
+     * Adds the @order to the book. A stop can't be crossed by an order joining a non-empty side, since it
+     * only moves the best price away from the triggers, so stops are checked only if the side has been empty.
+     */
+    private void placeOrder( BasicOrder order ) {
+        final boolean ask = order.getSide() == BasicOrder.OrderSide.ASK;
+        final boolean sideWasEmpty = (ask ? bestAsk : bestBid) == 0;
+        PriceLevel priceLevel = arrangeToPriceLevel(order);
+        if (order.getExpireAt() != 0) expiries.schedule(order);
+        if (sideWasEmpty) fireStops();
+        publishTopOfBook();
+        if (LOGGER.isLoggable(Level.FINE))
+            LOGGER.log(Level.FINE,
+                       "price level {0,number}: {1} {2}",
+                       new Object[] { priceLevel.getPrice(), ask ? "asks" : "bids", priceLevel.getOrdersStat() });
     }
 
     /**
@@ -208,16 +531,13 @@ public class OrdersBook {
      * @param order to be saved
      * @return a price level where new order has been arranged
      */
-    private PriceLevel arrangeToPriceLevel(
-            BasicOrder order,
-            PriorityQueue<PriceLevel> orders )
-    {
+    private PriceLevel arrangeToPriceLevel( BasicOrder order ) {
         int price = order.getPrice();
-        boolean levelIsPresent = this.orders.containsKey(price);
-        PriceLevel priceLevel = this.orders.computeIfAbsent(price, i -> new PriceLevel(price));
+        PriceLevel priceLevel = priceLevels.get(price);
+        final boolean levelIsPresent = priceLevel != null;
+        if (!levelIsPresent) priceLevel = createLevel(price, order.getSide());
         priceLevel.addOrder(order);
-        if (!levelIsPresent)
-            orders.add(priceLevel);
+        indexOf(order.getSide()).update(price, order.getSize(), 1, levelIsPresent ? 0 : 1);
         return priceLevel;
     }
 
@@ -229,15 +549,8 @@ public class OrdersBook {
     public void sell( int size ) {
         if (size < 0)
             throw new IllegalArgumentException("\"Size\" should be positive");
-        PriceLevel priceLevel = bids.peek();
-        int bestBid = priceLevel != null ? priceLevel.getPrice() : 0;
-        final int availableAtBestBid = orders.getOrDefault(bestBid, PriceLevel.EMPTY_PRICE_LEVEL).getSize();
-        if (size <= availableAtBestBid) {
-            deal(size, bids);
-        } else {
-            deal(availableAtBestBid, bids);
-            sell(size - availableAtBestBid);
-        }
+        deal(size, BasicOrder.OrderSide.BID);
+        fireStops();
     }
 
     /**
@@ -249,50 +562,112 @@ public class OrdersBook {
         if (size < 0) {
             throw new IllegalArgumentException("\"Size\" should be positive");
         }
-        PriceLevel priceLevel = asks.peek();
-        int bestAsk = priceLevel != null ? priceLevel.getPrice() : 0;
-        final int availableAtBestAsk = orders.getOrDefault(bestAsk, PriceLevel.EMPTY_PRICE_LEVEL).getSize();
-        if (size <= availableAtBestAsk) {
-            deal(size, asks);
-        } else {
-            deal(availableAtBestAsk, asks);
-            buy(size - availableAtBestAsk);
-        }
+        deal(size, BasicOrder.OrderSide.ASK);
+        fireStops();
     }
 
     /**
-     * Provides facilities for buy/sell operations
+     * Provides facilities for buy/sell operations. Consumes orders from the best price level
+     * in FIFO order until @size units are dealt or there are no orders left.
      *
-     * @param size            quantity of units to be dealt
-     * @param bestPriceLevels orders collection involved in deal
-     */
-    private void deal( int size, PriorityQueue<PriceLevel> bestPriceLevels ) {
-        if (size == 0) return;
-        PriceLevel bestPriceLevel = bestPriceLevels.peek();
-        int bestPrice = (bestPriceLevel == null) ? 0 : bestPriceLevel.getPrice();
-        // is there a best price level for the deal
-        if (bestPrice == 0) return;
-        PriceLevel dealPriceLevel = orders.get(bestPrice);
-        if (bestPriceLevel != dealPriceLevel)
-            LOGGER.severe("best price level != deal level");
-        if (dealPriceLevel == null) return;
-        BasicOrder firstOrder = dealPriceLevel.getFirstOrder();
-        int available = firstOrder.getSize();
-        int reminder = available - size;
-        if (reminder > 0) {
-            firstOrder.setSize(reminder);
-            dealPriceLevel.setSize(dealPriceLevel.getSize() - size);
-        } else {
-            dealPriceLevel.removeOrder(firstOrder);
-            if (reminder == 0) {
+     * @param size quantity of units to be dealt
+     * @param side side of the orders involved in deal
+     */
+    private void deal( int size, BasicOrder.OrderSide side ) {
+        final boolean bid = side == BasicOrder.OrderSide.BID;
+        final PriceLevelIndex index = indexOf(side);
+        final Object sweepEvent = FlightEvents.beginSweep();
+        int levelsRemoved = 0;
+        int ordersConsumed = 0;
+        // whether the last touched level stays in the book
+        boolean levelLeft = false;
+        int remaining = size;
+        while (remaining > 0) {
+            final int bestPrice = bid ? bestBid : bestAsk;
+            // is there a best price level for the deal
+            if (bestPrice == 0) break;
+            PriceLevel dealPriceLevel = priceLevels.get(bestPrice);
+            BasicOrder firstOrder = dealPriceLevel.getFirstOrder();
+            int available = firstOrder.getSize();
+            int reminder = available - remaining;
+            if (reminder > 0) {
+                firstOrder.setSize(reminder);
+                dealPriceLevel.setSize(dealPriceLevel.getSize() - remaining);
+                index.update(bestPrice, -remaining, 0, 0);
+                fillListener.onFill(bestPrice, remaining, firstOrder.getSide(), reminder);
+                levelLeft = true;
+                remaining = 0;
+            } else {
+                dealPriceLevel.removeFirstOrder();
+                expiries.cancel(firstOrder);
+                index.update(bestPrice, -available, -1, dealPriceLevel.isEmpty() ? -1 : 0);
+                ordersConsumed++;
+                levelLeft = !dealPriceLevel.isEmpty();
                 if (dealPriceLevel.isEmpty()) {
-                    orders.remove(dealPriceLevel.getPrice());
-                    bestPriceLevels.remove();
+                    removeLevel(bestPrice, side);
+                    levelsRemoved++;
                 }
-            } else {
-                deal(-reminder, bestPriceLevels);
+                fillListener.onFill(bestPrice, available, firstOrder.getSide(), 0);
+                remaining -= available;
             }
         }
+        FlightEvents.commitSweep(sweepEvent, side, size, size - remaining, levelsRemoved + (levelLeft ? 1 : 0),
+                                 ordersConsumed);
+        publishTopOfBook();
+    }
+
+    /**
+     * Executes the stops triggered by the current best prices. Every execution may move the best price further
+     * and trigger more stops, they are queued behind the ones already triggered and executed in a loop
+     * rather than recursively.
+     */
+    private void fireStops() {
+        if (triggers.isEmpty()) return;
+        triggers.collectTriggered(bestBid, bestAsk);
+        TriggerBook.Stop stop;
+        while ((stop = triggers.pollTriggered()) != null) {
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.log(Level.FINE, "{0} stop {1,number} triggered: {2,number}",
+                           new Object[] { stop.buy ? "buy" : "sell", stop.trigger, stop.size });
+            deal(stop.size, stop.buy ? BasicOrder.OrderSide.ASK : BasicOrder.OrderSide.BID);
+            triggers.collectTriggered(bestBid, bestAsk);
+        }
+    }
+
+    private PriceLevelIndex indexOf( BasicOrder.OrderSide side ) {
+        return side == BasicOrder.OrderSide.BID ? bidIndex : askIndex;
+    }
+
+    /**
+     * @return current logical time of the book
+     */
+    public long getTime() {
+        return expiries.getTime();
+    }
+
+    /**
+     * Moves logical time of the book forward to @time. Orders expiring at or before @time are removed
+     * from their price levels, which takes O(1) per expired order plus a best price lookup when the best
+     * level gets empty. Stops crossed by the new best prices are executed afterwards.
+     *
+     * @param time new logical time
+     * @throws IllegalArgumentException if @time is before the current time of the book
+     */
+    public void advanceTime( long time ) {
+        expiries.advance(time);
+        fireStops();
+        publishTopOfBook();
+    }
+
+    /**
+     * Removes the expired @order from the book. It's unlinked from the queue of its level in O(1).
+     */
+    private void expire( BasicOrder order ) {
+        final int price = order.getPrice();
+        final PriceLevel priceLevel = priceLevels.get(price);
+        priceLevel.removeOrder(order);
+        indexOf(order.getSide()).update(price, -order.getSize(), -1, priceLevel.isEmpty() ? -1 : 0);
+        if (priceLevel.isEmpty()) removeLevel(price, order.getSide());
     }
 
     /**
@@ -302,12 +677,38 @@ public class OrdersBook {
      * @return sum of the sizes at specified price level
      */
     public int querySize( int price ) {
-        printStat(Level.INFO);
+        printStat();
         if (price < 0) {
             throw new IllegalArgumentException("\"Price\" should be positive");
         }
-        PriceLevel priceLevel = orders.getOrDefault(price, PriceLevel.EMPTY_PRICE_LEVEL);
-        return priceLevel.getSize();
+        PriceLevel priceLevel = priceLevels.get(price);
+        return priceLevel == null ? 0 : priceLevel.getSize();
+    }
+
+    /**
+     * Removes the empty price level at @price and looks up the next best price if the level has been the best one.
+     * The price level index must be updated beforehand.
+     */
+    private void removeLevel( int price, BasicOrder.OrderSide side ) {
+        priceLevels.remove(price);
+        if (side == BasicOrder.OrderSide.BID) {
+            if (price == bestBid) bestBid = bidIndex.priceOfLevel(bidIndex.totalLevels());
+        } else {
+            if (price == bestAsk) bestAsk = askIndex.priceOfLevel(1);
+        }
+        FlightEvents.levelRemoved(price, side);
+    }
+
+    private PriceLevel createLevel( int price, BasicOrder.OrderSide side ) {
+        PriceLevel priceLevel = new PriceLevel(price);
+        priceLevels.put(price, priceLevel);
+        if (side == BasicOrder.OrderSide.BID) {
+            if (price > bestBid) bestBid = price;
+        } else {
+            if (bestAsk == 0 || price < bestAsk) bestAsk = price;
+        }
+        FlightEvents.levelCreated(price, side);
+        return priceLevel;
     }
 
     /**
@@ -316,8 +717,8 @@ public class OrdersBook {
      * @return highest bid price among all bids
      */
     public int queryBestBid() {
-        printStat(Level.INFO);
-        return bids.isEmpty() ? 0 : bids.peek().getPrice();
+        printStat();
+        return bestBid;
     }
 
     /**
@@ -326,40 +727,148 @@ public class OrdersBook {
      * @return highest bid price among all asks
      */
     public int queryBestAsk() {
-        printStat(Level.INFO);
-        return asks.isEmpty() ? 0 : asks.peek().getPrice();
-    }
-
-    private void printStat( Level logLevel ) {
-        if (!LOGGER.isLoggable(logLevel)) return;
-        LOGGER.log(logLevel, "Asks: {0}",
-                   orders.values().stream()
-                         .filter(pl -> pl.getFirstOrder().getSide() == BasicOrder.OrderSide.ASK)
-                         .map(PriceLevel::getPrice)
-                         .sorted(Comparator.reverseOrder())
-                         .map(String::valueOf)
-                         .collect(Collectors.joining(", ", "[", "]")));
-        LOGGER.log(logLevel, "Total asks size: {0}",
-                   orders.values().stream()
-                         .filter(pl -> pl.getFirstOrder().getSide() == BasicOrder.OrderSide.ASK)
-                         .mapToInt(PriceLevel::getSize)
-                         .sum());
-        LOGGER.log(logLevel, "Bids: {0}",
-                   orders.values().stream()
-                         .filter(pl -> pl.getFirstOrder().getSide() == BasicOrder.OrderSide.BID)
-                         .map(PriceLevel::getPrice)
-                         .sorted(Comparator.reverseOrder())
-                         .map(String::valueOf)
-                         .collect(Collectors.joining(", ", "[", "]")));
-        LOGGER.log(logLevel, "Total bids size: {0}",
-                   orders.values().stream()
-                         .filter(pl -> pl.getFirstOrder().getSide() == BasicOrder.OrderSide.BID)
-                         .mapToInt(PriceLevel::getSize)
-                         .sum());
-        LOGGER.log(logLevel, "Total orders: {0}",
-                   orders.values().stream()
-                         .filter(pl -> pl.getSize() != 0)
-                         .mapToInt(PriceLevel::getOrdersCount)
-                         .sum());
+        printStat();
+        return bestAsk;
+    }
+
+    /**
+     * Estimates buying @size units of cheapest asks without changing the book
+     *
+     * @param size quantity of units to buy
+     * @return quantity available, average and worst price of the deal
+     */
+    public ExecutionEstimate estimateBuy( int size ) {
+        if (size <= 0)
+            throw new IllegalArgumentException("\"Size\" should be positive");
+        long filled = Math.min(size, askIndex.totalSize());
+        if (filled == 0) return new ExecutionEstimate(0, 0, 0);
+        // the cheapest price level at which cumulative size reaches the filled quantity
+        int worstPrice = askIndex.lowestPriceWithSizeAbove(filled - 1);
+        long sizeBelow = askIndex.sizeUpTo(worstPrice - 1);
+        long notional = askIndex.notionalUpTo(worstPrice - 1) + (filled - sizeBelow) * worstPrice;
+        return new ExecutionEstimate(filled, notional, worstPrice);
+    }
+
+    /**
+     * Estimates selling @size units of most expensive bids without changing the book
+     *
+     * @param size quantity of units to sell
+     * @return quantity available, average and worst price of the deal
+     */
+    public ExecutionEstimate estimateSell( int size ) {
+        if (size <= 0)
+            throw new IllegalArgumentException("\"Size\" should be positive");
+        long total = bidIndex.totalSize();
+        long filled = Math.min(size, total);
+        if (filled == 0) return new ExecutionEstimate(0, 0, 0);
+        // the most expensive price level at which cumulative size from the top reaches the filled quantity
+        int worstPrice = bidIndex.lowestPriceWithSizeAbove(total - filled);
+        long sizeAbove = total - bidIndex.sizeUpTo(worstPrice);
+        long notionalAbove = bidIndex.totalNotional() - bidIndex.notionalUpTo(worstPrice);
+        long notional = notionalAbove + (filled - sizeAbove) * worstPrice;
+        return new ExecutionEstimate(filled, notional, worstPrice);
+    }
+
+    /**
+     * Returns total size of asks priced at or below @price, or of bids priced at or above @price,
+     * i.e. the quantity that can be dealt without crossing @price
+     *
+     * @param side  side of the book to query
+     * @param price limit price
+     * @return cumulative size up to the @price
+     */
+    public long queryCumulativeSize( BasicOrder.OrderSide side, int price ) {
+        if (price <= 0)
+            throw new IllegalArgumentException("\"Price\" should be positive");
+        if (side == BasicOrder.OrderSide.ASK)
+            return askIndex.sizeUpTo(price);
+        return bidIndex.totalSize() - bidIndex.sizeUpTo(price - 1);
+    }
+
+    /**
+     * Aggregates resting bids and asks priced within [@from, @to]
+     *
+     * @param from lowest price of the range, inclusive
+     * @param to   highest price of the range, inclusive
+     * @return total size and orders count of both sides within the range
+     */
+    public RangeStat queryRange( int from, int to ) {
+        if (from <= 0 || to <= 0)
+            throw new IllegalArgumentException("\"Price\" should be positive");
+        if (from > to)
+            throw new IllegalArgumentException("Range bounds are reversed");
+        return new RangeStat(bidIndex.sizeBetween(from, to), bidIndex.ordersBetween(from, to),
+                             askIndex.sizeBetween(from, to), askIndex.ordersBetween(from, to));
+    }
+
+    /**
+     * Copies up to @prices.length best levels of the @side, the best one first
+     *
+     * @param side   side of the book
+     * @param prices receives prices of the levels
+     * @param sizes  receives sizes of the levels
+     * @return count of copied levels
+     */
+    int copyTopLevels( BasicOrder.OrderSide side, int[] prices, int[] sizes ) {
+        final boolean bid = side == BasicOrder.OrderSide.BID;
+        final PriceLevelIndex index = bid ? bidIndex : askIndex;
+        final int totalLevels = index.totalLevels();
+        final int count = Math.min(prices.length, totalLevels);
+        for (int i = 0; i < count; i++) {
+            final int price = index.priceOfLevel(bid ? totalLevels - i : i + 1);
+            prices[i] = price;
+            sizes[i] = (int) index.sizeBetween(price, price);
+        }
+        return count;
+    }
+
+    /**
+     * @return total size of the orders of the @side
+     */
+    long totalSize( BasicOrder.OrderSide side ) {
+        return (side == BasicOrder.OrderSide.BID ? bidIndex : askIndex).totalSize();
+    }
+
+    /**
+     * @return count of the orders of the @side
+     */
+    long totalOrders( BasicOrder.OrderSide side ) {
+        return (side == BasicOrder.OrderSide.BID ? bidIndex : askIndex).totalOrders();
+    }
+
+    /**
+     * Returns running totals of the book. They are kept by the price level indexes,
+     * which are updated on every add and deal, so reading them takes O(1).
+     *
+     * @return sizes, levels and orders count of the book
+     */
+    public BookStats getStats() {
+        return new BookStats(bidIndex.totalSize(), askIndex.totalSize(), bidIndex.totalLevels(), askIndex.totalLevels(),
+                             bidIndex.totalOrders() + askIndex.totalOrders());
+    }
+
+    /**
+     * Records book totals into asynchronous log. Price levels are listed synchronously on FINE level only.
+     */
+    private void printStat() {
+        if (BookEvents.isEnabled()) {
+            BookEvents.bookStat(askIndex.totalSize(), askIndex.totalLevels(), bidIndex.totalSize(),
+                                bidIndex.totalLevels(),
+                                bidIndex.totalOrders() + askIndex.totalOrders());
+        }
+        if (!LOGGER.isLoggable(Level.FINE)) return;
+        LOGGER.log(Level.FINE, "Asks: {0}", listPrices(askIndex));
+        LOGGER.log(Level.FINE, "Bids: {0}", listPrices(bidIndex));
+    }
+
+    /**
+     * @return prices of all levels of the @index, the highest one first
+     */
+    private static String listPrices( PriceLevelIndex index ) {
+        StringJoiner prices = new StringJoiner(", ", "[", "]");
+        for (int level = index.totalLevels(); level > 0; level--) {
+            prices.add(String.valueOf(index.priceOfLevel(level)));
+        }
+        return prices.toString();
     }
 }
@@ -0,0 +1,372 @@
+package com.bookmap.ordermanagement;
+
+import java.util.Arrays;
+
+/**
+ * Order statistic tree over the price levels of one side of the {@link OrdersBook}: a treap keyed by price
+ * whose nodes keep resting size, notional (price * size), orders and levels count of their level along with
+ * the sums over their subtree. Cumulative, cost-to-execute, price range and n-th level queries take
+ * O(log(levels)) instead of walking every level.
+ * <p>
+ * Only occupied prices have nodes, so memory depends on the count of levels rather than on the prices,
+ * and every positive price is supported. Nodes live in parallel arrays which grow by doubling and are reused
+ * through a free list, so updates don't allocate.
+ */
+class PriceLevelIndex {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Node 0 stands for the empty tree, all of its sums are 0
+     */
+    private static final int NIL = 0;
+
+    /**
+     * Fields of the node values and subtree sums
+     */
+    private static final int SIZE     = 0;
+    private static final int NOTIONAL = 1;
+    private static final int ORDERS   = 2;
+    private static final int FIELDS   = 3;
+
+    private int[] prices;
+    private int[] priorities;
+    private int[] lefts;
+    private int[] rights;
+
+    /**
+     * Levels count of the node itself and of its subtree
+     */
+    private int[] levels;
+    private int[] subtreeLevels;
+
+    /**
+     * Size, notional and orders count of the node itself and of its subtree, FIELDS per node
+     */
+    private long[] values;
+    private long[] sums;
+
+    private int root = NIL;
+
+    /**
+     * Next node which has never been used
+     */
+    private int nextNode = 1;
+
+    /**
+     * First node of the list of released nodes, linked through lefts
+     */
+    private int freeNode = NIL;
+
+    /**
+     * State of the xorshift generator of the priorities. It's fixed, so the shape of the tree is reproducible.
+     */
+    private int seed = 0x2545F491;
+
+    /**
+     * Changes applied by the update in progress
+     */
+    private long sizeDelta;
+    private long notionalDelta;
+    private int  ordersDelta;
+    private int  levelsDelta;
+
+    PriceLevelIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity count of levels to preallocate nodes for
+     */
+    PriceLevelIndex( int capacity ) {
+        final int nodes = Math.max(capacity, 1) + 1;
+        prices = new int[nodes];
+        priorities = new int[nodes];
+        lefts = new int[nodes];
+        rights = new int[nodes];
+        levels = new int[nodes];
+        subtreeLevels = new int[nodes];
+        values = new long[nodes * FIELDS];
+        sums = new long[nodes * FIELDS];
+        priorities[NIL] = -1;
+    }
+
+    /**
+     * Applies change of the resting size at specified price level
+     *
+     * @param price       value of price level
+     * @param sizeDelta   signed change of the level size
+     * @param ordersDelta signed change of the level orders count
+     * @param levelsDelta 1 if the level is created, -1 if it's removed, 0 otherwise
+     */
+    void update( int price, long sizeDelta, int ordersDelta, int levelsDelta ) {
+        if (price <= 0)
+            throw new IllegalArgumentException("Price should be positive.");
+        this.sizeDelta = sizeDelta;
+        this.notionalDelta = sizeDelta * price;
+        this.ordersDelta = ordersDelta;
+        this.levelsDelta = levelsDelta;
+        root = update(root, price);
+    }
+
+    /**
+     * @return sum of sizes of all levels priced at or below @price
+     */
+    long sizeUpTo( int price ) {
+        return sumUpTo(price, SIZE);
+    }
+
+    /**
+     * @return sum of price * size of all levels priced at or below @price
+     */
+    long notionalUpTo( int price ) {
+        return sumUpTo(price, NOTIONAL);
+    }
+
+    /**
+     * @return count of orders resting at or below @price
+     */
+    long ordersUpTo( int price ) {
+        return sumUpTo(price, ORDERS);
+    }
+
+    /**
+     * @return sum of sizes of all levels priced within [@from, @to]
+     */
+    long sizeBetween( int from, int to ) {
+        return from > to ? 0 : sizeUpTo(to) - sizeUpTo(from - 1);
+    }
+
+    /**
+     * @return count of orders resting within [@from, @to]
+     */
+    long ordersBetween( int from, int to ) {
+        return from > to ? 0 : ordersUpTo(to) - ordersUpTo(from - 1);
+    }
+
+    long totalSize() {
+        return sums[root * FIELDS + SIZE];
+    }
+
+    long totalNotional() {
+        return sums[root * FIELDS + NOTIONAL];
+    }
+
+    long totalOrders() {
+        return sums[root * FIELDS + ORDERS];
+    }
+
+    int totalLevels() {
+        return subtreeLevels[root];
+    }
+
+    /**
+     * Finds the @n-th non-empty level counting from the lowest price
+     *
+     * @param n number of the level, starting from 1
+     * @return price of the level, or 0 if there are less than @n levels
+     */
+    int priceOfLevel( int n ) {
+        if (n <= 0 || n > totalLevels()) return 0;
+        int remaining = n;
+        int node = root;
+        for (;;) {
+            final int leftLevels = subtreeLevels[lefts[node]];
+            if (remaining <= leftLevels) {
+                node = lefts[node];
+                continue;
+            }
+            remaining -= leftLevels;
+            if (remaining <= levels[node]) return prices[node];
+            remaining -= levels[node];
+            node = rights[node];
+        }
+    }
+
+    /**
+     * Finds the lowest price whose cumulative size exceeds @target
+     *
+     * @param target cumulative size to exceed
+     * @return lowest price p such that sizeUpTo(p) > target, or 0 if total size doesn't exceed @target
+     */
+    int lowestPriceWithSizeAbove( long target ) {
+        if (target < 0) return 0;
+        if (totalSize() <= target) return 0;
+        long remaining = target;
+        int node = root;
+        for (;;) {
+            final long leftSize = sums[lefts[node] * FIELDS + SIZE];
+            if (remaining < leftSize) {
+                node = lefts[node];
+                continue;
+            }
+            remaining -= leftSize;
+            final long size = values[node * FIELDS + SIZE];
+            if (remaining < size) return prices[node];
+            remaining -= size;
+            node = rights[node];
+        }
+    }
+
+    private long sumUpTo( int price, int field ) {
+        long sum = 0;
+        int node = root;
+        while (node != NIL) {
+            if (prices[node] <= price) {
+                sum += sums[lefts[node] * FIELDS + field] + values[node * FIELDS + field];
+                node = rights[node];
+            } else {
+                node = lefts[node];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Applies the pending deltas to the level at @price within the subtree of @node, creating the level node
+     * if it's missing and removing it once it's vacant
+     *
+     * @return new root of the subtree
+     */
+    private int update( int node, int price ) {
+        if (node == NIL) {
+            node = allocate(price);
+            apply(node);
+            if (isVacant(node)) return release(node);
+            pull(node);
+            return node;
+        }
+        // the arrays may grow within the recursive call, so they are dereferenced after it
+        if (price < prices[node]) {
+            final int left = update(lefts[node], price);
+            lefts[node] = left;
+            if (priorities[left] > priorities[node]) return rotateRight(node);
+        } else if (price > prices[node]) {
+            final int right = update(rights[node], price);
+            rights[node] = right;
+            if (priorities[right] > priorities[node]) return rotateLeft(node);
+        } else {
+            apply(node);
+            if (isVacant(node)) return remove(node);
+        }
+        pull(node);
+        return node;
+    }
+
+    private void apply( int node ) {
+        values[node * FIELDS + SIZE] += sizeDelta;
+        values[node * FIELDS + NOTIONAL] += notionalDelta;
+        values[node * FIELDS + ORDERS] += ordersDelta;
+        levels[node] += levelsDelta;
+    }
+
+    private boolean isVacant( int node ) {
+        return levels[node] == 0 && values[node * FIELDS + SIZE] == 0 && values[node * FIELDS + ORDERS] == 0;
+    }
+
+    /**
+     * Removes @node from the top of its subtree by rotating it down to a leaf
+     *
+     * @return new root of the subtree
+     */
+    private int remove( int node ) {
+        if (lefts[node] == NIL) {
+            final int right = rights[node];
+            release(node);
+            return right;
+        }
+        if (rights[node] == NIL) {
+            final int left = lefts[node];
+            release(node);
+            return left;
+        }
+        final int top;
+        if (priorities[lefts[node]] > priorities[rights[node]]) {
+            top = rotateRight(node);
+            rights[top] = remove(node);
+        } else {
+            top = rotateLeft(node);
+            lefts[top] = remove(node);
+        }
+        pull(top);
+        return top;
+    }
+
+    private int rotateRight( int node ) {
+        final int left = lefts[node];
+        lefts[node] = rights[left];
+        rights[left] = node;
+        pull(node);
+        pull(left);
+        return left;
+    }
+
+    private int rotateLeft( int node ) {
+        final int right = rights[node];
+        rights[node] = lefts[right];
+        lefts[right] = node;
+        pull(node);
+        pull(right);
+        return right;
+    }
+
+    /**
+     * Recomputes subtree sums of @node from its children
+     */
+    private void pull( int node ) {
+        final int left = lefts[node];
+        final int right = rights[node];
+        for (int field = 0; field < FIELDS; field++) {
+            sums[node * FIELDS + field] = sums[left * FIELDS + field] + values[node * FIELDS + field]
+                    + sums[right * FIELDS + field];
+        }
+        subtreeLevels[node] = subtreeLevels[left] + levels[node] + subtreeLevels[right];
+    }
+
+    private int allocate( int price ) {
+        final int node;
+        if (freeNode != NIL) {
+            node = freeNode;
+            freeNode = lefts[node];
+        } else {
+            if (nextNode == prices.length) grow();
+            node = nextNode++;
+        }
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        prices[node] = price;
+        priorities[node] = seed >>> 1;
+        lefts[node] = NIL;
+        rights[node] = NIL;
+        levels[node] = 0;
+        for (int field = 0; field < FIELDS; field++) {
+            values[node * FIELDS + field] = 0;
+        }
+        return node;
+    }
+
+    /**
+     * Puts @node to the free list
+     *
+     * @return the empty tree
+     */
+    private int release( int node ) {
+        rights[node] = NIL;
+        lefts[node] = freeNode;
+        freeNode = node;
+        return NIL;
+    }
+
+    private void grow() {
+        final int capacity = prices.length << 1;
+        prices = Arrays.copyOf(prices, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        lefts = Arrays.copyOf(lefts, capacity);
+        rights = Arrays.copyOf(rights, capacity);
+        levels = Arrays.copyOf(levels, capacity);
+        subtreeLevels = Arrays.copyOf(subtreeLevels, capacity);
+        values = Arrays.copyOf(values, capacity * FIELDS);
+        sums = Arrays.copyOf(sums, capacity * FIELDS);
+    }
+}
@@ -0,0 +1,120 @@
+package com.bookmap.ordermanagement;
+
+/**
+ * Price levels of one {@link OrdersBook} by price: a hash map with primitive int keys, open addressing
+ * and linear probing. Memory depends on the count of levels rather than on the prices, so every positive
+ * price is supported, and looking a level up doesn't box the price.
+ * <p>
+ * The table is kept at most half full and grows by doubling. Removal shifts the following entries of the
+ * probe sequence back, so there are no tombstones and lookups don't degrade as levels come and go.
+ *
+ * @param <L> type of the price level
+ */
+class PriceLevelMap<L> {
+
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Price of an empty slot, prices of the levels are positive
+     */
+    private static final int EMPTY = 0;
+
+    private int[]    prices;
+    private Object[] levels;
+    private int      mask;
+    private int      size;
+
+    /**
+     * @param capacity count of levels to preallocate slots for
+     */
+    PriceLevelMap( int capacity ) {
+        int slots = MIN_CAPACITY;
+        while (slots < capacity << 1 && slots < (1 << 30)) {
+            slots <<= 1;
+        }
+        prices = new int[slots];
+        levels = new Object[slots];
+        mask = slots - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return level at @price, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    L get( int price ) {
+        for (int slot = slotOf(price); ; slot = (slot + 1) & mask) {
+            final int slotPrice = prices[slot];
+            if (slotPrice == price) return (L) levels[slot];
+            if (slotPrice == EMPTY) return null;
+        }
+    }
+
+    /**
+     * Puts the @level at @price, replacing the level which has been there
+     */
+    void put( int price, L level ) {
+        if (price <= 0)
+            throw new IllegalArgumentException("Price should be positive.");
+        int slot = slotOf(price);
+        while (prices[slot] != EMPTY && prices[slot] != price) {
+            slot = (slot + 1) & mask;
+        }
+        if (prices[slot] == EMPTY) {
+            if ((size + 1) << 1 > prices.length) {
+                grow();
+                put(price, level);
+                return;
+            }
+            prices[slot] = price;
+            size++;
+        }
+        levels[slot] = level;
+    }
+
+    /**
+     * Removes the level at @price if there is one
+     */
+    void remove( int price ) {
+        int slot = slotOf(price);
+        for (;;) {
+            if (prices[slot] == price) break;
+            if (prices[slot] == EMPTY) return;
+            slot = (slot + 1) & mask;
+        }
+        size--;
+        // moves back the entries which can't be reached past the emptied slot otherwise
+        int hole = slot;
+        for (int next = (hole + 1) & mask; prices[next] != EMPTY; next = (next + 1) & mask) {
+            final int home = slotOf(prices[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                prices[hole] = prices[next];
+                levels[hole] = levels[next];
+                hole = next;
+            }
+        }
+        prices[hole] = EMPTY;
+        levels[hole] = null;
+    }
+
+    private int slotOf( int price ) {
+        final int hash = price * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        final int[] oldPrices = prices;
+        final Object[] oldLevels = levels;
+        prices = new int[oldPrices.length << 1];
+        levels = new Object[oldPrices.length << 1];
+        mask = prices.length - 1;
+        size = 0;
+        for (int slot = 0; slot < oldPrices.length; slot++) {
+            if (oldPrices[slot] != EMPTY) put(oldPrices[slot], (L) oldLevels[slot]);
+        }
+    }
+}
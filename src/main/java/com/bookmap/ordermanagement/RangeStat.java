@@ -0,0 +1,35 @@
+package com.bookmap.ordermanagement;
+
+/**
+ * Aggregated size and orders count of both sides of the {@link OrdersBook} within a price range
+ */
+public class RangeStat {
+
+    private final long bidSize;
+    private final long bidOrders;
+    private final long askSize;
+    private final long askOrders;
+
+    RangeStat( long bidSize, long bidOrders, long askSize, long askOrders ) {
+        this.bidSize = bidSize;
+        this.bidOrders = bidOrders;
+        this.askSize = askSize;
+        this.askOrders = askOrders;
+    }
+
+    public long getBidSize() {
+        return bidSize;
+    }
+
+    public long getBidOrders() {
+        return bidOrders;
+    }
+
+    public long getAskSize() {
+        return askSize;
+    }
+
+    public long getAskOrders() {
+        return askOrders;
+    }
+}
@@ -0,0 +1,161 @@
+package com.bookmap.ordermanagement;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of the order expiries over 64-bit logical time. Each level has 64 slots,
+ * a slot of level L spans 64^L time units. An order is placed at the level of the highest 6-bit digit in which
+ * its expiry differs from the current time, so scheduling and cancelling take O(1). Advancing the time visits
+ * only occupied slots, found by the per level occupancy bitmasks, and cascades the orders of a higher level slot
+ * down once the time enters it. Every order cascades at most once per level before it expires.
+ * <p>
+ * Orders are linked into the slots through their own fields, so the wheel doesn't allocate.
+ */
+class TimingWheel {
+
+    private static final int BITS   = 6;
+    private static final int SLOTS  = 1 << BITS;
+    private static final int LEVELS = (Long.SIZE + BITS - 1) / BITS;
+
+    /**
+     * First order of every slot, level by level
+     */
+    private final BasicOrder[] heads = new BasicOrder[LEVELS * SLOTS];
+
+    /**
+     * Bit s of occupied[L] is set if the slot s of the level L holds any order
+     */
+    private final long[] occupied = new long[LEVELS];
+
+    /**
+     * Receives the expired orders
+     */
+    private final Consumer<BasicOrder> handler;
+
+    private long now;
+    private int  size;
+
+    /**
+     * @param handler receives the orders whose expiry time has been reached, after they are unscheduled
+     */
+    TimingWheel( Consumer<BasicOrder> handler ) {
+        this.handler = handler;
+    }
+
+    /**
+     * @return current logical time
+     */
+    long getTime() {
+        return now;
+    }
+
+    /**
+     * @return count of the scheduled orders
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Schedules expiry of the @order at its expiry time
+     *
+     * @throws IllegalArgumentException if the expiry time is not later than the current time
+     */
+    void schedule( BasicOrder order ) {
+        final long deadline = order.getExpireAt();
+        if (deadline <= now)
+            throw new IllegalArgumentException("Expiry time should be later than the current time.");
+        final int level = levelOf(deadline);
+        final int slot = slotOf(deadline, level);
+        final int index = level * SLOTS + slot;
+        final BasicOrder head = heads[index];
+        order.wheelPrev = null;
+        order.wheelNext = head;
+        if (head != null) head.wheelPrev = order;
+        heads[index] = order;
+        occupied[level] |= 1L << slot;
+        size++;
+    }
+
+    /**
+     * Removes the @order from the wheel, if it's scheduled
+     */
+    void cancel( BasicOrder order ) {
+        final long deadline = order.getExpireAt();
+        if (deadline <= now) return;
+        final int level = levelOf(deadline);
+        final int slot = slotOf(deadline, level);
+        final int index = level * SLOTS + slot;
+        // a scheduled order is either linked to another one or heads its slot
+        if (order.wheelPrev == null && heads[index] != order) return;
+        if (order.wheelPrev == null) {
+            heads[index] = order.wheelNext;
+        } else {
+            order.wheelPrev.wheelNext = order.wheelNext;
+        }
+        if (order.wheelNext != null) order.wheelNext.wheelPrev = order.wheelPrev;
+        if (heads[index] == null) occupied[level] &= ~(1L << slot);
+        unlink(order);
+    }
+
+    /**
+     * Moves the current time forward to @time and passes every order expiring at or before @time
+     * to the handler
+     *
+     * @throws IllegalArgumentException if @time is before the current time
+     */
+    void advance( long time ) {
+        if (time < now)
+            throw new IllegalArgumentException("Time should not go backwards.");
+        for (;;) {
+            int level = 0;
+            while (level < LEVELS && occupied[level] == 0) level++;
+            if (level == LEVELS) break;
+            final int slot = Long.numberOfTrailingZeros(occupied[level]);
+            final long slotStart = levelStart(level) | (long) slot << level * BITS;
+            if (slotStart > time) break;
+            now = slotStart;
+            final int index = level * SLOTS + slot;
+            BasicOrder order = heads[index];
+            heads[index] = null;
+            occupied[level] &= ~(1L << slot);
+            while (order != null) {
+                final BasicOrder next = order.wheelNext;
+                unlink(order);
+                if (order.getExpireAt() <= time) {
+                    handler.accept(order);
+                } else {
+                    schedule(order);
+                }
+                order = next;
+            }
+        }
+        now = time;
+    }
+
+    private void unlink( BasicOrder order ) {
+        order.wheelPrev = null;
+        order.wheelNext = null;
+        size--;
+    }
+
+    /**
+     * @return level of the highest digit in which @deadline differs from the current time
+     */
+    private int levelOf( long deadline ) {
+        return (Long.SIZE - 1 - Long.numberOfLeadingZeros(deadline ^ now)) / BITS;
+    }
+
+    private static int slotOf( long deadline, int level ) {
+        return (int) (deadline >>> level * BITS) & (SLOTS - 1);
+    }
+
+    /**
+     * @return start of the span covered by the slots of the @level, i.e. the current time
+     * with digits of the @level and below cleared
+     */
+    private long levelStart( int level ) {
+        final int shift = (level + 1) * BITS;
+        return shift >= Long.SIZE ? 0 : now >>> shift << shift;
+    }
+}
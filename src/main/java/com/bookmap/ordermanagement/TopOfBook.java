@@ -0,0 +1,61 @@
+package com.bookmap.ordermanagement;
+
+/**
+ * Best bid and best ask of the {@link OrdersBook} with sizes of their price levels. Prices and sizes are 0
+ * for an empty side.
+ */
+public class TopOfBook {
+
+    private final int bidPrice;
+    private final int bidSize;
+    private final int askPrice;
+    private final int askSize;
+
+    TopOfBook( int bidPrice, int bidSize, int askPrice, int askSize ) {
+        this.bidPrice = bidPrice;
+        this.bidSize = bidSize;
+        this.askPrice = askPrice;
+        this.askSize = askSize;
+    }
+
+    public int getBidPrice() {
+        return bidPrice;
+    }
+
+    public int getBidSize() {
+        return bidSize;
+    }
+
+    public int getAskPrice() {
+        return askPrice;
+    }
+
+    public int getAskSize() {
+        return askSize;
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TopOfBook that = (TopOfBook) o;
+        return bidPrice == that.bidPrice
+                && bidSize == that.bidSize
+                && askPrice == that.askPrice
+                && askSize == that.askSize;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = bidPrice;
+        result = 31 * result + bidSize;
+        result = 31 * result + askPrice;
+        result = 31 * result + askSize;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d,%d / %d,%d", bidPrice, bidSize, askPrice, askSize);
+    }
+}
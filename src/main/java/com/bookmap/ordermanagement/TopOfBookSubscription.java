@@ -0,0 +1,119 @@
+package com.bookmap.ordermanagement;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Conflated feed of top of book changes of an {@link OrdersBook}, see {@link OrdersBook#subscribeTopOfBook()}.
+ * <p>
+ * The matching thread overwrites the single latest state under a sequence lock and unparks the waiting
+ * consumer, so it never blocks or allocates however slow the consumer is. The consumer always reads
+ * the latest state, intermediate ones are skipped. Each subscription is meant for a single consumer thread.
+ */
+public class TopOfBookSubscription {
+
+    /**
+     * Incremented before and after the state is written, so it's odd while writing is in progress
+     */
+    private volatile long version;
+
+    private volatile int bidPrice;
+    private volatile int bidSize;
+    private volatile int askPrice;
+    private volatile int askSize;
+
+    /**
+     * Consumer parked in {@link #awaitUpdate(long, TimeUnit)}
+     */
+    private volatile Thread waiter;
+
+    /**
+     * Version of the state last returned to the consumer
+     */
+    private long consumedVersion;
+
+    TopOfBookSubscription() {
+    }
+
+    /**
+     * Called on the matching thread only
+     */
+    void publish( int bidPrice, int bidSize, int askPrice, int askSize ) {
+        final long current = version;
+        version = current + 1;
+        this.bidPrice = bidPrice;
+        this.bidSize = bidSize;
+        this.askPrice = askPrice;
+        this.askSize = askSize;
+        version = current + 2;
+        final Thread waiting = waiter;
+        if (waiting != null) LockSupport.unpark(waiting);
+    }
+
+    /**
+     * @return true if no state has been published yet
+     */
+    boolean isEmpty() {
+        return version == 0;
+    }
+
+    /**
+     * @return count of states published by the matching thread
+     */
+    public long getPublishedCount() {
+        return version >>> 1;
+    }
+
+    /**
+     * @return true if there is a state the consumer hasn't read yet
+     */
+    public boolean hasUpdate() {
+        return (version & ~1L) != consumedVersion;
+    }
+
+    /**
+     * Reads the latest state if it has changed since the previous read
+     *
+     * @return the latest top of book, or null if there are no updates
+     */
+    public TopOfBook poll() {
+        for (;;) {
+            final long before = version;
+            if (before == consumedVersion) return null;
+            if ((before & 1) != 0) continue;
+            final int bidPrice = this.bidPrice;
+            final int bidSize = this.bidSize;
+            final int askPrice = this.askPrice;
+            final int askSize = this.askSize;
+            if (version == before) {
+                consumedVersion = before;
+                return new TopOfBook(bidPrice, bidSize, askPrice, askSize);
+            }
+        }
+    }
+
+    /**
+     * Waits until the top of book changes since the previous read
+     *
+     * @param timeout maximum time to wait
+     * @param unit    unit of the @timeout
+     * @return the latest top of book, or null if the timeout has elapsed
+     * @throws InterruptedException if the consumer thread is interrupted while waiting
+     */
+    public TopOfBook awaitUpdate( long timeout, TimeUnit unit ) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiter = Thread.currentThread();
+        try {
+            for (;;) {
+                final TopOfBook top = poll();
+                if (top != null) return top;
+                if (Thread.interrupted()) throw new InterruptedException();
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return null;
+                LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            waiter = null;
+        }
+    }
+}
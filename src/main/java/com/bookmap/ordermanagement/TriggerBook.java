@@ -0,0 +1,115 @@
+package com.bookmap.ordermanagement;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Pending stop orders of the {@link OrdersBook} sorted by trigger price per side. A buy stop is triggered once
+ * the best ask reaches its trigger price or goes above it, a sell stop once the best bid reaches its trigger price
+ * or goes below it. Crossed stops are taken off with a single range view of the tree, which costs O(log n + k)
+ * for k triggered stops, and are queued for execution closest trigger first, FIFO within the same trigger.
+ */
+class TriggerBook {
+
+    /**
+     * Stop order waiting for its trigger price
+     */
+    static final class Stop {
+        final boolean buy;
+        final int     trigger;
+        final int     size;
+
+        Stop( boolean buy, int trigger, int size ) {
+            this.buy = buy;
+            this.trigger = trigger;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Buy stops by trigger price, the lowest trigger first
+     */
+    private final TreeMap<Integer, Queue<Stop>> buyStops = new TreeMap<>();
+
+    /**
+     * Sell stops by trigger price, the highest trigger first
+     */
+    private final TreeMap<Integer, Queue<Stop>> sellStops = new TreeMap<>(Comparator.reverseOrder());
+
+    /**
+     * Stops which have been triggered but not executed yet
+     */
+    private final Queue<Stop> triggered = new ArrayDeque<>();
+
+    /**
+     * Count of pending stops
+     */
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return true if a stop with the @trigger would be triggered by the @bestBid or @bestAsk right away
+     */
+    static boolean crosses( boolean buy, int trigger, int bestBid, int bestAsk ) {
+        return buy ? bestAsk != 0 && trigger <= bestAsk : bestBid != 0 && trigger >= bestBid;
+    }
+
+    void add( Stop stop ) {
+        (stop.buy ? buyStops : sellStops).computeIfAbsent(stop.trigger, trigger -> new ArrayDeque<>()).offer(stop);
+        size++;
+    }
+
+    /**
+     * Moves the stops crossed by the @bestBid or @bestAsk to the queue of triggered stops
+     *
+     * @param bestBid best bid price, 0 if there are no bids
+     * @param bestAsk best ask price, 0 if there are no asks
+     */
+    void collectTriggered( int bestBid, int bestAsk ) {
+        if (bestAsk != 0 && !buyStops.isEmpty() && buyStops.firstKey() <= bestAsk)
+            collect(buyStops.headMap(bestAsk, true));
+        if (bestBid != 0 && !sellStops.isEmpty() && sellStops.firstKey() >= bestBid)
+            collect(sellStops.headMap(bestBid, true));
+    }
+
+    private void collect( SortedMap<Integer, Queue<Stop>> crossed ) {
+        for (Queue<Stop> stops : crossed.values()) {
+            size -= stops.size();
+            triggered.addAll(stops);
+        }
+        crossed.clear();
+    }
+
+    /**
+     * @return next triggered stop to execute, or null if there are none
+     */
+    Stop pollTriggered() {
+        return triggered.poll();
+    }
+
+    /**
+     * Copies pending stops of one side in the order they would be triggered, starting at @from
+     *
+     * @return count of copied stops
+     */
+    int copyStops( boolean buy, int[] triggers, int[] sizes, int from ) {
+        int i = from;
+        for (Queue<Stop> stops : (buy ? buyStops : sellStops).values()) {
+            for (Stop stop : stops) {
+                triggers[i] = stop.trigger;
+                sizes[i++] = stop.size;
+            }
+        }
+        return i - from;
+    }
+}
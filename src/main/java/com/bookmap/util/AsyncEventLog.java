@@ -0,0 +1,162 @@
+package com.bookmap.util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous garbage-free log of primitive events. Producers put events into a preallocated ring
+ * without locks and allocations, a background thread formats them and passes to the target {@link Logger}.
+ * When the ring is full, the event is dropped and counted, so producers never block.
+ */
+public class AsyncEventLog implements AutoCloseable {
+
+    /**
+     * Turns a recorded event into the log message. It's called on the background thread only.
+     */
+    public interface EventFormatter {
+        String format( int type, long arg0, long arg1, long arg2, long arg3, long arg4 );
+    }
+
+    private static final int  ARGS            = 5;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Logger         logger;
+    private final Level          level;
+    private final EventFormatter formatter;
+    private final int            capacity;
+    private final int            mask;
+
+    private final int[]  types;
+    private final long[] args;
+
+    /**
+     * Sequence of the event written to each slot, published after the slot is filled
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * Next sequence to be claimed by producers
+     */
+    private final AtomicLong head    = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Next sequence to be consumed by the background thread
+     */
+    private volatile long    tail;
+    private volatile boolean running = true;
+
+    private final Thread consumer;
+
+    /**
+     * @param logger    target logger
+     * @param level     level events are logged with
+     * @param capacity  count of events the ring holds, rounded up to a power of two
+     * @param formatter formats events into messages
+     */
+    public AsyncEventLog( Logger logger, Level level, int capacity, EventFormatter formatter ) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity should be positive.");
+        this.logger = logger;
+        this.level = level;
+        this.formatter = formatter;
+        int size = Integer.highestOneBit(capacity);
+        this.capacity = size < capacity ? size << 1 : size;
+        this.mask = this.capacity - 1;
+        types = new int[this.capacity];
+        args = new long[this.capacity * ARGS];
+        long[] initial = new long[this.capacity];
+        Arrays.fill(initial, -1);
+        published = new AtomicLongArray(initial);
+        consumer = new Thread(this::drain, "async-log-" + logger.getName());
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * @return true if events are going to be logged by the target logger
+     */
+    public boolean isEnabled() {
+        return logger.isLoggable(level);
+    }
+
+    /**
+     * Puts the event into the ring
+     *
+     * @return false if the ring is full and the event has been dropped
+     */
+    public boolean log( int type, long arg0, long arg1, long arg2, long arg3, long arg4 ) {
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= capacity || !running) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+        final int slot = (int) sequence & mask;
+        final int offset = slot * ARGS;
+        types[slot] = type;
+        args[offset] = arg0;
+        args[offset + 1] = arg1;
+        args[offset + 2] = arg2;
+        args[offset + 3] = arg3;
+        args[offset + 4] = arg4;
+        published.lazySet(slot, sequence);
+        return true;
+    }
+
+    /**
+     * @return count of events dropped because the ring was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops accepting events, waits until all accepted events are logged and stops the background thread
+     */
+    @Override
+    public void close() {
+        if (!running) return;
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.get() > 0) {
+            logger.log(Level.WARNING, "{0} log events dropped due to full ring", dropped.get());
+        }
+    }
+
+    private void drain() {
+        while (running || tail != head.get()) {
+            final long sequence = tail;
+            final int slot = (int) sequence & mask;
+            if (published.get(slot) != sequence) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            final int offset = slot * ARGS;
+            final int type = types[slot];
+            final long arg0 = args[offset];
+            final long arg1 = args[offset + 1];
+            final long arg2 = args[offset + 2];
+            final long arg3 = args[offset + 3];
+            final long arg4 = args[offset + 4];
+            tail = sequence + 1;
+            try {
+                logger.log(level, formatter.format(type, arg0, arg1, arg2, arg3, arg4));
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to log event", e);
+            }
+        }
+    }
+}
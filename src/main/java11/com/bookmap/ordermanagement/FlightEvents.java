@@ -0,0 +1,151 @@
+package com.bookmap.ordermanagement;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events of the order management. Events are created only while they are enabled
+ * in a running recording, duration events are committed only if they exceed their threshold.
+ * Level events are frequent, so they are disabled by default and should be enabled in the recording settings.
+ */
+final class FlightEvents {
+
+    private static final String CATEGORY = "Order Management";
+
+    @Name("com.bookmap.ordermanagement.CommandDispatch")
+    @Label("Command Dispatch")
+    @Description("Command dispatched to the order book")
+    @Category(CATEGORY)
+    @Threshold("20 us")
+    @StackTrace(false)
+    static class CommandEvent extends Event {
+        @Label("Type")
+        char   type;
+        @Label("Side")
+        String side;
+        @Label("Price")
+        long   price;
+        @Label("Size")
+        long   size;
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("com.bookmap.ordermanagement.LevelCreated")
+    @Label("Price Level Created")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static class LevelCreatedEvent extends Event {
+        @Label("Price")
+        int    price;
+        @Label("Side")
+        String side;
+    }
+
+    @Name("com.bookmap.ordermanagement.LevelRemoved")
+    @Label("Price Level Removed")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static class LevelRemovedEvent extends Event {
+        @Label("Price")
+        int    price;
+        @Label("Side")
+        String side;
+    }
+
+    @Name("com.bookmap.ordermanagement.Sweep")
+    @Label("Multi-Level Sweep")
+    @Description("Buy or sell deal consuming more than one price level")
+    @Category(CATEGORY)
+    @Threshold("10 us")
+    @StackTrace(false)
+    static class SweepEvent extends Event {
+        @Label("Side")
+        String side;
+        @Label("Size")
+        int    size;
+        @Label("Filled")
+        int    filled;
+        @Label("Levels Touched")
+        int    levels;
+        @Label("Orders Consumed")
+        int    orders;
+    }
+
+    private static final EventType COMMAND       = EventType.getEventType(CommandEvent.class);
+    private static final EventType LEVEL_CREATED = EventType.getEventType(LevelCreatedEvent.class);
+    private static final EventType LEVEL_REMOVED = EventType.getEventType(LevelRemovedEvent.class);
+    private static final EventType SWEEP         = EventType.getEventType(SweepEvent.class);
+
+    private FlightEvents() {
+    }
+
+    static Object beginCommand() {
+        if (!COMMAND.isEnabled()) return null;
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitCommand( Object event, char type, String side, long price, long size, CommandResult outcome ) {
+        if (event == null) return;
+        CommandEvent commandEvent = (CommandEvent) event;
+        commandEvent.end();
+        if (!commandEvent.shouldCommit()) return;
+        commandEvent.type = type;
+        commandEvent.side = side;
+        commandEvent.price = price;
+        commandEvent.size = size;
+        commandEvent.outcome = outcome.name();
+        commandEvent.commit();
+    }
+
+    static void levelCreated( int price, BasicOrder.OrderSide side ) {
+        if (!LEVEL_CREATED.isEnabled()) return;
+        LevelCreatedEvent event = new LevelCreatedEvent();
+        event.price = price;
+        event.side = sideName(side);
+        event.commit();
+    }
+
+    static void levelRemoved( int price, BasicOrder.OrderSide side ) {
+        if (!LEVEL_REMOVED.isEnabled()) return;
+        LevelRemovedEvent event = new LevelRemovedEvent();
+        event.price = price;
+        event.side = sideName(side);
+        event.commit();
+    }
+
+    static Object beginSweep() {
+        if (!SWEEP.isEnabled()) return null;
+        SweepEvent event = new SweepEvent();
+        event.begin();
+        return event;
+    }
+
+    static void commitSweep( Object event, BasicOrder.OrderSide side, int size, int filled, int levels, int orders ) {
+        if (event == null || levels < 2) return;
+        SweepEvent sweepEvent = (SweepEvent) event;
+        sweepEvent.end();
+        if (!sweepEvent.shouldCommit()) return;
+        sweepEvent.side = sideName(side);
+        sweepEvent.size = size;
+        sweepEvent.filled = filled;
+        sweepEvent.levels = levels;
+        sweepEvent.orders = orders;
+        sweepEvent.commit();
+    }
+
+    private static String sideName( BasicOrder.OrderSide side ) {
+        return side == BasicOrder.OrderSide.BID ? "bid" : "ask";
+    }
+}
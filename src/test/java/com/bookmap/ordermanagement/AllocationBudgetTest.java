@@ -0,0 +1,172 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.function.IntConsumer;
+
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.ASK;
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.BID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Guards the matching hot path against allocation regressions. Every operation is repeated on a warmed-up book
+ * and the bytes allocated by the current thread are compared to the budget declared for the operation.
+ * Prices are above the cache of boxed integers, so boxing shows up as allocation. The JIT occasionally allocates
+ * on the measured thread while recompiling, so the least of a few measurements is taken.
+ */
+class AllocationBudgetTest {
+
+    private static final int WARM_UP    = 5_000;
+    private static final int OPERATIONS = 5_000;
+    private static final int ATTEMPTS   = 5;
+    private static final int LEVELS     = 100;
+    private static final int BID_PRICE  = 1_000;
+    private static final int ASK_PRICE  = BID_PRICE + LEVELS;
+
+    /**
+     * A new order is the only object an add is allowed to allocate, the level queue is linked through the orders
+     */
+    private static final long ADD_BUDGET = 48;
+
+    /**
+     * Estimates and range queries return one small result object
+     */
+    private static final long RESULT_BUDGET = 48;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    private static final PrintStream NO_OUTPUT = new PrintStream(new OutputStream() {
+        @Override
+        public void write( int b ) {
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) {
+        }
+    });
+
+    @BeforeAll
+    static void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    void addAtExistingLevel() {
+        OrdersBook book = newBook();
+        assertBudget("add bid", ADD_BUDGET, i -> book.tryAddOrder(BID_PRICE - i % LEVELS, 1, BID));
+        assertBudget("add ask", ADD_BUDGET, i -> book.tryAddOrder(ASK_PRICE + i % LEVELS, 1, ASK));
+    }
+
+    @Test
+    void sweeps() {
+        OrdersBook book = newBook();
+        assertEquals(0, allocatedBySweeps(book, true), "buy sweeps");
+        assertEquals(0, allocatedBySweeps(book, false), "sell sweeps");
+    }
+
+    @Test
+    void queries() {
+        OrdersBook book = newBook();
+        assertBudget("querySize", 0, i -> book.querySize(BID_PRICE - i % LEVELS));
+        assertBudget("queryBestBid", 0, i -> book.queryBestBid());
+        assertBudget("queryBestAsk", 0, i -> book.queryBestAsk());
+        assertBudget("queryCumulativeSize", 0, i -> book.queryCumulativeSize(ASK, ASK_PRICE + i % LEVELS));
+        assertBudget("estimateBuy", RESULT_BUDGET, i -> book.estimateBuy(1 + i % LEVELS));
+        assertBudget("queryRange", RESULT_BUDGET, i -> book.queryRange(BID_PRICE - i % LEVELS, ASK_PRICE));
+    }
+
+    @Test
+    void dispatch() {
+        OrdersBook book = newBook();
+        BasicOrderManagement dispatcher = new BasicOrderManagement(book, NO_OUTPUT);
+        String[] adds = new String[LEVELS];
+        for (int i = 0; i < LEVELS; i++) {
+            adds[i] = "u," + (BID_PRICE - i) + ",1,bid";
+        }
+        assertBudget("u", ADD_BUDGET, i -> dispatcher.dispatchCommand(adds[i % LEVELS]));
+        assertBudget("o,sell", 0, i -> dispatcher.dispatchCommand("o,sell,1"));
+        for (String query : new String[] { "q,best_bid", "q,best_ask", "q,size,1000", "q,cumulative_size,bid,950" }) {
+            assertBudget(query, 0, i -> dispatcher.dispatchCommand(query));
+        }
+        assertBudget("q,range", RESULT_BUDGET, i -> dispatcher.dispatchCommand("q,range,950,1050"));
+    }
+
+    /**
+     * Book with @LEVELS levels per side, a few orders each
+     */
+    private static OrdersBook newBook() {
+        OrdersBook book = new OrdersBook();
+        for (int i = 0; i < LEVELS; i++) {
+            for (int order = 0; order < 3; order++) {
+                book.tryAddOrder(BID_PRICE - i, 10, BID);
+                book.tryAddOrder(ASK_PRICE + i, 10, ASK);
+            }
+        }
+        return book;
+    }
+
+    /**
+     * Repeatedly refills the side and sweeps it across all levels, measuring the sweeps only
+     */
+    private static long allocatedBySweeps( OrdersBook book, boolean buy ) {
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < LEVELS; i++) {
+                if (buy) {
+                    book.tryAddOrder(ASK_PRICE + i, 5, ASK);
+                } else {
+                    book.tryAddOrder(BID_PRICE - i, 5, BID);
+                }
+            }
+            final long before = allocatedBytes();
+            for (int sweep = 0; sweep < 2 * LEVELS; sweep++) {
+                if (buy) {
+                    book.buy(7);
+                } else {
+                    book.sell(7);
+                }
+            }
+            final long after = allocatedBytes();
+            if (round > 0) allocated = Math.min(allocated, after - before - overhead());
+        }
+        return allocated;
+    }
+
+    private static void assertBudget( String operation, long budget, IntConsumer op ) {
+        for (int i = 0; i < WARM_UP; i++) {
+            op.accept(i);
+        }
+        long allocated = Long.MAX_VALUE;
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            final long before = allocatedBytes();
+            for (int i = 0; i < OPERATIONS; i++) {
+                op.accept(i);
+            }
+            allocated = Math.min(allocated, allocatedBytes() - before - overhead());
+        }
+        assertTrue(allocated <= budget * OPERATIONS,
+                   String.format("%s allocates %.1f bytes per operation, budget is %d",
+                                 operation, (double) allocated / OPERATIONS, budget));
+    }
+
+    private static long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Bytes allocated by the measurement itself
+     */
+    private static long overhead() {
+        final long before = allocatedBytes();
+        return allocatedBytes() - before;
+    }
+}
@@ -0,0 +1,106 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BasicOrderManagementTest {
+
+    private OrdersBook            book;
+    private ByteArrayOutputStream output;
+    private BasicOrderManagement  dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        book = new OrdersBook();
+        output = new ByteArrayOutputStream();
+        dispatcher = new BasicOrderManagement(book, new PrintStream(output, true));
+        dispatcher.dispatchCommand("u,9,1,bid");
+        dispatcher.dispatchCommand("u,11,5,ask");
+        output.reset();
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = ';', value = {
+            "u,10,2,bid;        ACCEPTED",
+            "u,0,2,bid;         IGNORED",
+            "x,10,2,bid;        UNKNOWN_COMMAND",
+            "uu,10,2,bid;       UNKNOWN_COMMAND",
+            "u,10,2;            MISSING_ARGUMENT",
+            "u;                 MISSING_ARGUMENT",
+            "u,10,2,buy;        INVALID_SIDE",
+            "u,1o,2,bid;        INVALID_PRICE",
+            "u,-10,2,bid;       INVALID_PRICE",
+            "u,99999999999,2,bid; INVALID_PRICE",
+            "u,10,0,bid;        INVALID_SIZE",
+            "u,10,,bid;         INVALID_SIZE",
+            "u,11,2,bid;        CROSSED_SPREAD",
+            "u,9,2,ask;         CROSSED_SPREAD",
+            "o,buy,1;           ACCEPTED",
+            "o,hold,1;          UNKNOWN_OPERATION",
+            "o,sell,-1;         INVALID_SIZE",
+            "o,sell;            MISSING_ARGUMENT",
+            "q,best_bid;        ACCEPTED",
+            "q,worst_bid;       UNKNOWN_QUERY",
+            "q,size;            MISSING_ARGUMENT",
+            "q,buy_cost,0;      INVALID_SIZE",
+            "q,cumulative_size,mid,10; INVALID_SIDE",
+            "q,range,10,5;      INVALID_RANGE",
+    })
+    void commandOutcome( String line, CommandResult expected ) {
+        final long count = dispatcher.getResultCount(expected);
+        assertEquals(expected, dispatcher.dispatchCommand(line));
+        assertEquals(count + 1, dispatcher.getResultCount(expected));
+    }
+
+    @Test
+    void rejectedCommandsDontChangeBook() {
+        dispatcher.dispatchCommand("u,11,2,bid");
+        dispatcher.dispatchCommand("o,sell,x");
+        assertEquals(9, book.queryBestBid());
+        assertEquals(1, book.querySize(9));
+        assertEquals(11, book.queryBestAsk());
+        assertEquals(5, book.querySize(11));
+        assertEquals(1, book.getRejectedCount(CommandResult.CROSSED_SPREAD));
+        assertEquals("", output.toString());
+    }
+
+    @Test
+    void strictBookStopsAtFirstRejection() {
+        OrdersBook strictBook = new OrdersBook(false);
+        BasicOrderManagement strict = new BasicOrderManagement(strictBook, new PrintStream(output, true));
+        assertEquals(CommandResult.ACCEPTED, strict.dispatchCommand("u,9,1,bid"));
+        CommandRejectedException crossed = assertThrows(CommandRejectedException.class,
+                                                        () -> strict.dispatchCommand("u,8,2,ask"));
+        assertEquals(CommandResult.CROSSED_SPREAD, crossed.getResult());
+        assertEquals(1, strict.getResultCount(CommandResult.CROSSED_SPREAD));
+        assertThrows(CommandRejectedException.class, () -> strict.dispatchCommand("x,1"));
+        assertEquals(0, strictBook.queryBestAsk());
+    }
+
+    @Test
+    void pricesFarApartAreSupported() {
+        assertEquals(CommandResult.ACCEPTED, dispatcher.dispatchCommand("u,2000000000,5,ask"));
+        assertEquals(CommandResult.ACCEPTED, dispatcher.dispatchCommand("u,2147483647,3,ask"));
+        assertEquals(CommandResult.ACCEPTED, dispatcher.dispatchCommand("o,buy,6"));
+        assertEquals(2000000000, book.queryBestAsk());
+        assertEquals(4, book.querySize(2000000000));
+        assertEquals(3, book.querySize(Integer.MAX_VALUE));
+        assertEquals(9, book.queryBestBid());
+    }
+
+    @Test
+    void queriesPrintResults() {
+        dispatcher.dispatchCommand("q,best_bid");
+        dispatcher.dispatchCommand("q,size,11");
+        dispatcher.dispatchCommand("q,range,1,20");
+        assertEquals(String.format("9,1%n5%n1,1,5,1%n"), output.toString());
+    }
+}
@@ -0,0 +1,80 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BatchReplayTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void everyFileIsReplayedIntoItsOwnOutput() throws IOException {
+        Path outputDir = Files.createDirectory(tempDir.resolve("out"));
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            inputs.add(writeCommands(tempDir.resolve("commands" + i), i));
+        }
+        double[] durations = BasicOrderManagement.replayBatch(inputs, outputDir);
+        assertEquals(inputs.size(), durations.length);
+        for (Path input : inputs) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            try (PrintStream out = new PrintStream(expected)) {
+                BasicOrderManagement.replay(input, out, null);
+            }
+            Path output = outputDir.resolve(input.getFileName() + ".out");
+            assertArrayEquals(expected.toByteArray(), Files.readAllBytes(output), "output of " + input);
+        }
+    }
+
+    @Test
+    void sameFileNamesAreRejected() throws IOException {
+        Path outputDir = Files.createDirectory(tempDir.resolve("out"));
+        Path first = writeCommands(Files.createDirectory(tempDir.resolve("a")).resolve("commands"), 1);
+        Path second = writeCommands(Files.createDirectory(tempDir.resolve("b")).resolve("commands"), 2);
+        assertThrows(IllegalArgumentException.class,
+                     () -> BasicOrderManagement.replayBatch(Arrays.asList(first, second), outputDir));
+        assertFalse(Files.exists(outputDir.resolve("commands.out")));
+        assertEquals(2, BasicOrderManagement.replayBatch(Arrays.asList(first, second), null).length);
+    }
+
+    private static Path writeCommands( Path file, long seed ) throws IOException {
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    lines.add("u," + (1 + random.nextInt(50)) + "," + (1 + random.nextInt(9)) + ",bid");
+                    break;
+                case 1:
+                    lines.add("u," + (51 + random.nextInt(50)) + "," + (1 + random.nextInt(9)) + ",ask");
+                    break;
+                case 2:
+                    lines.add("o," + (random.nextBoolean() ? "buy," : "sell,") + (1 + random.nextInt(9)));
+                    break;
+                case 3:
+                    lines.add(random.nextBoolean() ? "q,best_bid" : "q,best_ask");
+                    break;
+                default:
+                    lines.add("q,size," + (1 + random.nextInt(100)));
+            }
+        }
+        return Files.write(file, lines, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,134 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.ASK;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CommandCoalescerTest {
+
+    private static final int COMMANDS = 2_000;
+
+    private static final String[] QUERIES = {
+            "q,best_bid", "q,best_ask", "q,size,50", "q,buy_cost,7", "q,sell_cost,7", "q,cumulative_size,bid,45",
+            "q,range,40,60", "q,range,60,40", "q,worst_bid",
+    };
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 64, COMMANDS})
+    void outputMatchesUncoalescedPath( int windowSize ) {
+        List<String> lines = commands(new Random(7));
+
+        OrdersBook expectedBook = new OrdersBook();
+        ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+        BasicOrderManagement dispatcher = new BasicOrderManagement(expectedBook, new PrintStream(expectedOutput, true));
+        CommandResult[] expectedResults = new CommandResult[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            expectedResults[i] = dispatcher.dispatchCommand(lines.get(i));
+        }
+
+        OrdersBook book = new OrdersBook();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CommandCoalescer coalescer = new CommandCoalescer(book, new PrintStream(output, true));
+        CommandResult[] results = new CommandResult[lines.size()];
+        String[] window = new String[windowSize];
+        CommandResult[] windowResults = new CommandResult[windowSize];
+        for (int from = 0; from < lines.size(); from += windowSize) {
+            int count = Math.min(windowSize, lines.size() - from);
+            for (int i = 0; i < count; i++) {
+                window[i] = lines.get(from + i);
+            }
+            coalescer.dispatchWindow(window, count, windowResults);
+            System.arraycopy(windowResults, 0, results, from, count);
+        }
+
+        assertEquals(expectedOutput.toString(), output.toString());
+        assertArrayEquals(expectedResults, results);
+        assertEquals(expectedBook.snapshot(), book.snapshot());
+        for (CommandResult result : CommandResult.values()) {
+            assertEquals(dispatcher.getResultCount(result), coalescer.getDispatcher().getResultCount(result),
+                         result.name());
+            assertEquals(expectedBook.getRejectedCount(result), book.getRejectedCount(result), result.name());
+        }
+    }
+
+    @Test
+    void foldedAddsKeepFifoOrder() {
+        OrdersBook book = new OrdersBook();
+        List<Integer> fills = new ArrayList<>();
+        book.setFillListener(( price, quantity, side, remainingSize ) -> fills.add(quantity));
+        CommandCoalescer coalescer = new CommandCoalescer(book, new PrintStream(new ByteArrayOutputStream()));
+        String[] window = { "u,10,1,ask", "u,10,2,ask", "u,10,3,ask", "o,buy,6" };
+        CommandResult[] results = new CommandResult[window.length];
+        coalescer.dispatchWindow(window, window.length, results);
+        for (CommandResult result : results) {
+            assertEquals(CommandResult.ACCEPTED, result);
+        }
+        assertEquals(Arrays.asList(1, 2, 3), fills);
+        assertEquals(0, book.querySize(10));
+        assertEquals(0, book.queryCumulativeSize(ASK, 10));
+    }
+
+    @Test
+    void stopsFireAfterFirstFoldedAdd() {
+        String[] window = { "u,10,5,bid", "s,buy,20,8", "u,25,5,ask", "u,25,5,ask", "q,best_ask", "q,size,25" };
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CommandCoalescer coalescer = new CommandCoalescer(new OrdersBook(), new PrintStream(output, true));
+        coalescer.dispatchWindow(window, window.length, new CommandResult[window.length]);
+        assertEquals(String.format("25,5%n5%n"), output.toString());
+    }
+
+    /**
+     * Commands come in bursts of adds at the same level and runs of repeated queries, mixed with stops,
+     * sweeps emptying a side and time steps expiring some of the orders
+     */
+    private static List<String> commands( Random random ) {
+        List<String> lines = new ArrayList<>();
+        long time = 0;
+        while (lines.size() < COMMANDS) {
+            int kind = random.nextInt(12);
+            if (kind < 5) {
+                boolean bid = random.nextBoolean();
+                int price = bid ? 30 + random.nextInt(25) : 48 + random.nextInt(25);
+                int burst = 1 + random.nextInt(5);
+                for (int i = 0; i < burst; i++) {
+                    lines.add(String.format("u,%d,%d,%s", price, random.nextInt(5), bid ? "bid" : "ask"));
+                }
+            } else if (kind < 7) {
+                // some deals sweep a whole side, so stops can wait for the side to be refilled
+                int size = random.nextInt(4) == 0 ? 30 + random.nextInt(60) : random.nextInt(12);
+                lines.add((kind == 5 ? "o,buy," : "o,sell,") + size);
+            } else if (kind < 9) {
+                int repeats = 1 + random.nextInt(4);
+                for (int i = 0; i < repeats; i++) {
+                    lines.add(QUERIES[random.nextInt(QUERIES.length)]);
+                }
+            } else if (kind < 10) {
+                lines.add(random.nextBoolean() ? "" : "u,0,1,bid");
+            } else if (kind == 10) {
+                boolean buy = random.nextBoolean();
+                int trigger = buy ? 50 + random.nextInt(30) : 25 + random.nextInt(30);
+                lines.add(String.format("s,%s,%d,%d", buy ? "buy" : "sell", trigger, 1 + random.nextInt(12)));
+            } else {
+                if (random.nextBoolean()) {
+                    time += 1 + random.nextInt(20);
+                    lines.add("t," + time);
+                } else {
+                    lines.add(String.format("u,%d,%d,%s,%d", 40 + random.nextInt(20), 1 + random.nextInt(5),
+                                            random.nextBoolean() ? "bid" : "ask", time + 1 + random.nextInt(40)));
+                }
+            }
+        }
+        return lines;
+    }
+}
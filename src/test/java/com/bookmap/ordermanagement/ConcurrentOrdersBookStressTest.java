@@ -0,0 +1,122 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.ASK;
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.BID;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentOrdersBookStressTest {
+
+    private static final int THREADS            = 8;
+    private static final int ROUNDS             = 20;
+    private static final int OPERATIONS_A_ROUND = 2_000;
+
+    @Test
+    void singleThreadedBehavesLikeOrdersBook() {
+        ConcurrentOrdersBook book = new ConcurrentOrdersBook();
+        assertEquals(CommandResult.ACCEPTED, book.tryAddOrder(10, 2, ASK));
+        assertEquals(CommandResult.ACCEPTED, book.tryAddOrder(10, 3, ASK));
+        assertEquals(CommandResult.ACCEPTED, book.tryAddOrder(12, 4, ASK));
+        assertEquals(CommandResult.ACCEPTED, book.tryAddOrder(8, 5, BID));
+        assertEquals(CommandResult.CROSSED_SPREAD, book.tryAddOrder(10, 1, BID));
+        assertEquals(CommandResult.CROSSED_SPREAD, book.tryAddOrder(8, 1, ASK));
+        assertEquals(CommandResult.INVALID_SIZE, book.tryAddOrder(9, 0, ASK));
+
+        assertEquals(6, book.buy(6));
+        assertEquals(12, book.queryBestAsk());
+        assertEquals(3, book.querySize(12));
+        assertEquals(5, book.sell(7));
+        assertEquals(0, book.queryBestBid());
+        assertEquals(0, book.querySize(8));
+    }
+
+    /**
+     * Writers add passive orders around the spread, so many of them try to cross it, while the others sweep
+     * the book. After every round the book should hold exactly what has been added and not dealt,
+     * the spread should stay positive and the cached best prices should match the price levels. A reader samples
+     * the best prices meanwhile, they should never be crossed.
+     */
+    @RepeatedTest(3)
+    void totalsArePreservedAndSpreadStaysPositive() throws Exception {
+        final ConcurrentOrdersBook book = new ConcurrentOrdersBook();
+        final AtomicLong added = new AtomicLong();
+        final AtomicLong dealt = new AtomicLong();
+        final CyclicBarrier start = new CyclicBarrier(THREADS + 1);
+        final CyclicBarrier end = new CyclicBarrier(THREADS + 1);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<String> crossed = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (writing.get() && crossed.get() == null) {
+                final long prices = book.queryBestPrices();
+                final int bestBid = ConcurrentOrdersBook.bidOf(prices);
+                final int bestAsk = ConcurrentOrdersBook.askOf(prices);
+                if (bestBid != 0 && bestAsk != 0 && bestBid >= bestAsk) crossed.set(bestBid + " / " + bestAsk);
+            }
+        });
+        reader.start();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(id);
+                try {
+                    for (int round = 0; round < ROUNDS; round++) {
+                        start.await();
+                        for (int i = 0; i < OPERATIONS_A_ROUND; i++) {
+                            int action = random.nextInt(10);
+                            if (action < 8) {
+                                int price = 80 + random.nextInt(40);
+                                int size = 1 + random.nextInt(10);
+                                BasicOrder.OrderSide side = (action & 1) == 0 ? BID : ASK;
+                                if (book.tryAddOrder(price, size, side) == CommandResult.ACCEPTED) {
+                                    added.addAndGet(size);
+                                }
+                            } else {
+                                int size = 1 + random.nextInt(30);
+                                dealt.addAndGet(action == 8 ? book.buy(size) : book.sell(size));
+                            }
+                        }
+                        end.await();
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            start.await();
+            end.await();
+            long resting = book.queryTotalSize(BID) + book.queryTotalSize(ASK);
+            assertEquals(added.get() - dealt.get(), resting, "totals at round " + round);
+            int bestBid = book.queryBestBid();
+            int bestAsk = book.queryBestAsk();
+            if (bestBid != 0 && bestAsk != 0) {
+                assertTrue(bestBid < bestAsk, "spread at round " + round + ": " + bestBid + " / " + bestAsk);
+            }
+            for (int price = 80; price < 120; price++) {
+                if (book.querySize(price) == 0) continue;
+                assertTrue(bestBid == 0 || price <= bestBid || price >= bestAsk, "level inside spread " + price);
+            }
+            if (bestBid != 0) assertTrue(book.querySize(bestBid) > 0, "best bid level is empty");
+            if (bestAsk != 0) assertTrue(book.querySize(bestAsk) > 0, "best ask level is empty");
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writing.set(false);
+        reader.join();
+        assertNull(crossed.get(), "reader has seen crossed best prices");
+    }
+}
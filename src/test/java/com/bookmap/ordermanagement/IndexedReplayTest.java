@@ -0,0 +1,120 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.ASK;
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.BID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IndexedReplayTest {
+
+    private static final int COMMANDS = 500;
+
+    @TempDir
+    Path tempDir;
+
+    private Path         file;
+    private List<String> lines;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Random random = new Random(42);
+        OrdersBook reference = new OrdersBook();
+        BasicOrderManagement dispatcher = new BasicOrderManagement(reference, System.out);
+        lines = new ArrayList<>();
+        long time = 0;
+        for (int i = 0; i < COMMANDS; i++) {
+            String line;
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                line = kind % 2 == 0
+                       ? String.format("u,%d,%d,bid", 1 + random.nextInt(50), 1 + random.nextInt(9))
+                       : String.format("u,%d,%d,ask", 51 + random.nextInt(50), 1 + random.nextInt(9));
+                if (random.nextInt(3) == 0) line += "," + (time + 1 + random.nextInt(40));
+            } else if (kind < 8) {
+                String operation = kind == 6 ? "buy" : "sell";
+                long available = reference.queryCumulativeSize(kind == 6 ? ASK : BID, kind == 6 ? 100 : 1);
+                line = available == 0 ? "q,best_bid" : "o," + operation + "," + (1 + random.nextInt((int) available));
+            } else {
+                line = kind == 9 ? i % 2 == 0 ? "" : "t," + (time += random.nextInt(10))
+                                 : i % 2 == 0 ? "q,best_ask"
+                                              : random.nextBoolean()
+                                                ? "s,buy," + (reference.queryBestAsk() + 1 + random.nextInt(5)) + ",2"
+                                                : "s,sell," + (reference.queryBestBid() - 1) + ",2";
+            }
+            lines.add(line);
+            dispatcher.dispatchCommand(line);
+        }
+        file = tempDir.resolve("commands");
+        Files.write(file, lines, StandardCharsets.US_ASCII);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 64, 1000})
+    void bookAtMatchesSequentialReplay(int checkpointInterval) throws IOException {
+        IndexedReplay replay = IndexedReplay.build(file, checkpointInterval, true);
+        assertEquals(COMMANDS, replay.getCommandsCount());
+        assertEquals(1 + COMMANDS / checkpointInterval, replay.getCheckpointsCount());
+        OrdersBook sequential = new OrdersBook();
+        BasicOrderManagement dispatcher = new BasicOrderManagement(sequential, System.out);
+        for (int command = 0; command <= COMMANDS; command++) {
+            if (command > 0) dispatcher.dispatchCommand(lines.get(command - 1));
+            if (command % 13 == 0 || command == COMMANDS) {
+                assertEquals(sequential.snapshot(), replay.bookAt(command).snapshot(), "state at #" + command);
+            }
+        }
+    }
+
+    @Test
+    void restoredBookKeepsFifoOrder() {
+        OrdersBook book = new OrdersBook();
+        book.addOrder(new BasicOrder(10, 1, ASK));
+        book.addOrder(new BasicOrder(10, 5, ASK));
+        book.addOrder(new BasicOrder(5, 3, BID));
+        OrdersBook restored = new OrdersBook(book.snapshot(), true);
+        restored.buy(2);
+        assertEquals(4, restored.querySize(10));
+        assertEquals(5, restored.queryBestBid());
+        assertEquals(3, restored.querySize(5));
+    }
+
+    @Test
+    void commandOutOfRange() throws IOException {
+        IndexedReplay replay = IndexedReplay.build(file, 10, true);
+        assertThrows(IllegalArgumentException.class, () -> replay.bookAt(COMMANDS + 1));
+    }
+
+    @Test
+    void strictReplayStopsAtFirstRejection() throws IOException {
+        Path crossing = Files.write(tempDir.resolve("crossing"),
+                                    Arrays.asList("u,10,1,ask", "u,11,1,bid", "u,5,1,bid"),
+                                    StandardCharsets.US_ASCII);
+        CommandRejectedException e = assertThrows(CommandRejectedException.class,
+                                                  () -> IndexedReplay.build(crossing, 2, false));
+        assertEquals(CommandResult.CROSSED_SPREAD, e.getResult());
+        assertEquals(5, IndexedReplay.build(crossing, 2, true).bookAt(3).queryBestBid());
+    }
+
+    @Test
+    void fileTruncatedAfterIndexing() throws IOException {
+        IndexedReplay replay = IndexedReplay.build(file, 100, true);
+        Files.write(file, lines.subList(0, 250), StandardCharsets.US_ASCII);
+        replay.bookAt(250);
+        assertThrows(EOFException.class, () -> replay.bookAt(270));
+    }
+}
@@ -0,0 +1,118 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.ASK;
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.BID;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedBookTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readerSeesPublishedTopLevels() throws IOException {
+        Path file = tempDir.resolve("book");
+        OrdersBook book = new OrdersBook();
+        book.tryAddOrder(10, 1, BID);
+        book.tryAddOrder(10, 2, BID);
+        book.tryAddOrder(8, 3, BID);
+        book.tryAddOrder(5, 4, BID);
+        book.tryAddOrder(3000, 5, BID);
+        book.tryAddOrder(3001, 6, ASK);
+        book.sell(5);
+        try (MappedBookPublisher publisher = new MappedBookPublisher(file, 2);
+             MappedBookReader reader = new MappedBookReader(file)) {
+            MappedBookReader.View view = reader.newView();
+            assertEquals(0, reader.read(view));
+            publisher.publish(book);
+            assertEquals(1, reader.read(view));
+            assertEquals(2, reader.getDepth());
+            assertEquals(2, view.getBidLevels());
+            assertEquals(10, view.getBidPrice(0));
+            assertEquals(3, view.getBidSize(0));
+            assertEquals(8, view.getBidPrice(1));
+            assertEquals(3, view.getBidSize(1));
+            assertEquals(1, view.getAskLevels());
+            assertEquals(3001, view.getAskPrice(0));
+            assertEquals(6, view.getAskSize(0));
+            assertEquals(10, view.getTotalBidSize());
+            assertEquals(4, view.getTotalBidOrders());
+            assertEquals(6, view.getTotalAskSize());
+            assertEquals(1, view.getTotalAskOrders());
+
+            book.buy(6);
+            publisher.publish(book);
+            assertEquals(2, reader.read(view));
+            assertEquals(0, view.getAskLevels());
+            assertEquals(0, view.getTotalAskSize());
+        }
+    }
+
+    @Test
+    void foreignFileIsRejected() throws IOException {
+        Path file = tempDir.resolve("foreign");
+        Files.write(file, new byte[128]);
+        assertThrows(IllegalArgumentException.class, () -> new MappedBookReader(file));
+    }
+
+    /**
+     * The publisher keeps all levels within the depth, so every consistent read has totals matching its levels
+     */
+    @Test
+    void concurrentReaderGetsConsistentSnapshots() throws Exception {
+        Path file = tempDir.resolve("book");
+        OrdersBook book = new OrdersBook();
+        AtomicBoolean done = new AtomicBoolean();
+        try (MappedBookPublisher publisher = new MappedBookPublisher(file, 64);
+             MappedBookReader reader = new MappedBookReader(file)) {
+            CompletableFuture<Long> consumer = CompletableFuture.supplyAsync(() -> {
+                MappedBookReader.View view = reader.newView();
+                long reads = 0;
+                while (!done.get()) {
+                    reader.read(view);
+                    long bidSize = 0;
+                    for (int level = 0; level < view.getBidLevels(); level++) {
+                        bidSize += view.getBidSize(level);
+                        if (level > 0) assertTrue(view.getBidPrice(level) < view.getBidPrice(level - 1));
+                    }
+                    long askSize = 0;
+                    for (int level = 0; level < view.getAskLevels(); level++) {
+                        askSize += view.getAskSize(level);
+                        if (level > 0) assertTrue(view.getAskPrice(level) > view.getAskPrice(level - 1));
+                    }
+                    assertEquals(view.getTotalBidSize(), bidSize);
+                    assertEquals(view.getTotalAskSize(), askSize);
+                    reads++;
+                }
+                return reads;
+            });
+            Random random = new Random(3);
+            for (int i = 0; i < 100_000; i++) {
+                int action = random.nextInt(4);
+                if (action == 0) {
+                    book.tryAddOrder(1 + random.nextInt(32), 1 + random.nextInt(10), BID);
+                } else if (action == 1) {
+                    book.tryAddOrder(33 + random.nextInt(32), 1 + random.nextInt(10), ASK);
+                } else if (action == 2) {
+                    book.buy(random.nextInt(15));
+                } else {
+                    book.sell(random.nextInt(15));
+                }
+                publisher.publish(book);
+            }
+            done.set(true);
+            assertTrue(consumer.get(10, TimeUnit.SECONDS) > 0);
+        }
+    }
+}
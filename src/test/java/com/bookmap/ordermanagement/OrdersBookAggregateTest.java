@@ -0,0 +1,122 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.ASK;
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.BID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrdersBookAggregateTest {
+
+    private OrdersBook book;
+
+    @BeforeEach
+    void setUp() {
+        book = new OrdersBook();
+        book.addOrder(new BasicOrder(10, 2, ASK));
+        book.addOrder(new BasicOrder(10, 3, ASK));
+        book.addOrder(new BasicOrder(12, 4, ASK));
+        book.addOrder(new BasicOrder(3000, 1, ASK));
+
+        book.addOrder(new BasicOrder(8, 5, BID));
+        book.addOrder(new BasicOrder(7, 2, BID));
+        book.addOrder(new BasicOrder(5, 10, BID));
+    }
+
+    @Test
+    void buyWithinBestAsk() {
+        ExecutionEstimate estimate = book.estimateBuy(4);
+        assertEquals(4, estimate.getSize());
+        assertEquals(40, estimate.getNotional());
+        assertEquals(10, estimate.getWorstPrice());
+        assertEquals(10d, estimate.getAveragePrice());
+    }
+
+    @Test
+    void buyAcrossLevels() {
+        ExecutionEstimate estimate = book.estimateBuy(7);
+        assertEquals(7, estimate.getSize());
+        assertEquals(5 * 10 + 2 * 12, estimate.getNotional());
+        assertEquals(12, estimate.getWorstPrice());
+    }
+
+    @Test
+    void buyMoreThanAvailableFillsWholeSide() {
+        ExecutionEstimate estimate = book.estimateBuy(100);
+        assertEquals(10, estimate.getSize());
+        assertEquals(5 * 10 + 4 * 12 + 3000, estimate.getNotional());
+        assertEquals(3000, estimate.getWorstPrice());
+    }
+
+    @Test
+    void sellAcrossLevels() {
+        ExecutionEstimate estimate = book.estimateSell(8);
+        assertEquals(8, estimate.getSize());
+        assertEquals(5 * 8 + 2 * 7 + 5, estimate.getNotional());
+        assertEquals(5, estimate.getWorstPrice());
+    }
+
+    @Test
+    void estimateOnEmptySide() {
+        OrdersBook empty = new OrdersBook();
+        assertEquals(0, empty.estimateBuy(1).getSize());
+        assertEquals(0, empty.estimateSell(1).getWorstPrice());
+    }
+
+    @Test
+    void estimateDoesntChangeBook() {
+        book.estimateBuy(7);
+        book.estimateSell(8);
+        assertEquals(10, book.queryBestAsk());
+        assertEquals(5, book.querySize(10));
+        assertEquals(8, book.queryBestBid());
+        assertEquals(5, book.querySize(8));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 5, 6, 9, 10, 11})
+    void buyEstimateMatchesExecutedDeal(int size) {
+        ExecutionEstimate estimate = book.estimateBuy(size);
+        book.buy(size);
+        assertEquals(estimate.getSize(), 10 - book.queryCumulativeSize(ASK, Integer.MAX_VALUE >> 1));
+    }
+
+    @Test
+    void cumulativeSizeFollowsDeals() {
+        assertEquals(5, book.queryCumulativeSize(ASK, 11));
+        assertEquals(9, book.queryCumulativeSize(ASK, 12));
+        assertEquals(7, book.queryCumulativeSize(BID, 6));
+        assertEquals(17, book.queryCumulativeSize(BID, 1));
+
+        book.buy(6);
+        book.sell(6);
+        assertEquals(0, book.queryCumulativeSize(ASK, 11));
+        assertEquals(3, book.queryCumulativeSize(ASK, 12));
+        assertEquals(1, book.queryCumulativeSize(BID, 6));
+        assertEquals(11, book.queryCumulativeSize(BID, 1));
+    }
+
+    @Test
+    void rangeCoversBothSides() {
+        RangeStat range = book.queryRange(7, 12);
+        assertEquals(7, range.getBidSize());
+        assertEquals(2, range.getBidOrders());
+        assertEquals(9, range.getAskSize());
+        assertEquals(3, range.getAskOrders());
+    }
+
+    @Test
+    void rangeFollowsDeals() {
+        book.buy(3);
+        book.sell(5);
+        RangeStat range = book.queryRange(1, 4000);
+        assertEquals(12, range.getBidSize());
+        assertEquals(2, range.getBidOrders());
+        assertEquals(7, range.getAskSize());
+        assertEquals(3, range.getAskOrders());
+        assertEquals(0, book.queryRange(8, 9).getBidOrders());
+    }
+}
@@ -0,0 +1,194 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.ASK;
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.BID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OrdersBookExpiryTest {
+
+    private OrdersBook book;
+
+    @BeforeEach
+    void setUp() {
+        book = new OrdersBook();
+        book.addOrder(new BasicOrder(10, 2, ASK, 100));
+        book.addOrder(new BasicOrder(10, 3, ASK));
+        book.addOrder(new BasicOrder(12, 4, ASK, 50));
+        book.addOrder(new BasicOrder(8, 5, BID, 100));
+        book.addOrder(new BasicOrder(7, 2, BID, 5000));
+    }
+
+    @Test
+    void ordersStayUntilExpiryTime() {
+        book.advanceTime(99);
+        assertEquals(5, book.querySize(10));
+        assertEquals(8, book.queryBestBid());
+        assertEquals(99, book.getTime());
+    }
+
+    @Test
+    void expiryRemovesOrdersAndLevels() {
+        book.advanceTime(100);
+        assertEquals(3, book.querySize(10));
+        assertEquals(0, book.querySize(12));
+        assertEquals(0, book.querySize(8));
+        assertEquals(7, book.queryBestBid());
+        assertEquals(10, book.queryBestAsk());
+        BookStats stats = book.getStats();
+        assertEquals(2, stats.getBidSize());
+        assertEquals(3, stats.getAskSize());
+        assertEquals(1, stats.getBidLevels());
+        assertEquals(1, stats.getAskLevels());
+        assertEquals(2, stats.getOrders());
+    }
+
+    @Test
+    void bestAskMovesWhenBestLevelExpires() {
+        OrdersBook book = new OrdersBook();
+        book.addOrder(new BasicOrder(10, 1, ASK, 10));
+        book.addOrder(new BasicOrder(11, 1, ASK, 20));
+        book.addOrder(new BasicOrder(15, 1, ASK));
+        book.advanceTime(10);
+        assertEquals(11, book.queryBestAsk());
+        book.advanceTime(20);
+        assertEquals(15, book.queryBestAsk());
+    }
+
+    @Test
+    void dealSkipsExpiredOrders() {
+        List<String> fills = new ArrayList<>();
+        book.setFillListener(( price, quantity, side, remainingSize ) -> fills.add(price + "," + quantity));
+        book.addOrder(new BasicOrder(10, 1, ASK, 30));
+        book.addOrder(new BasicOrder(10, 6, ASK));
+        book.advanceTime(30);
+        book.buy(4);
+        assertEquals("[10,2, 10,2]", fills.toString());
+        assertEquals(7, book.querySize(10));
+    }
+
+    @Test
+    void expiredOrdersAreUnlinkedFromHeadAndTail() {
+        List<String> fills = new ArrayList<>();
+        book.setFillListener(( price, quantity, side, remainingSize ) -> fills.add(price + "," + quantity));
+        book.addOrder(new BasicOrder(10, 1, ASK, 30));
+        book.addOrder(new BasicOrder(10, 4, ASK, 30));
+        book.advanceTime(30);
+        book.addOrder(new BasicOrder(10, 6, ASK));
+        book.advanceTime(100);
+        assertEquals(9, book.querySize(10));
+        book.buy(12);
+        assertEquals("[10,3, 10,6]", fills.toString());
+        assertEquals(0, book.queryBestAsk());
+    }
+
+    @Test
+    void consumedOrderDoesNotExpire() {
+        book.sell(5);
+        book.addOrder(new BasicOrder(8, 1, BID));
+        book.advanceTime(100);
+        assertEquals(1, book.querySize(8));
+        assertEquals(8, book.queryBestBid());
+    }
+
+    @Test
+    void partiallyFilledOrderExpiresWithRemainingSize() {
+        book.sell(3);
+        book.advanceTime(100);
+        assertEquals(0, book.querySize(8));
+        assertEquals(2, book.getStats().getBidSize());
+    }
+
+    @Test
+    void largeTimeJump() {
+        book.addOrder(new BasicOrder(9, 1, BID, Long.MAX_VALUE));
+        book.advanceTime(1L << 40);
+        assertEquals(9, book.queryBestBid());
+        assertEquals(3, book.querySize(10));
+        book.advanceTime(Long.MAX_VALUE);
+        assertEquals(0, book.queryBestBid());
+    }
+
+    @Test
+    void expiredOrderIsRejected() {
+        book.advanceTime(10);
+        assertEquals(CommandResult.ORDER_EXPIRED, book.tryAddOrder(9, 1, BID, 10));
+        assertEquals(CommandResult.ACCEPTED, book.tryAddOrder(9, 1, BID, 11));
+        assertThrows(IllegalArgumentException.class, () -> book.addOrder(new BasicOrder(9, 1, BID, 5)));
+        assertThrows(IllegalArgumentException.class, () -> book.advanceTime(9));
+    }
+
+    @Test
+    void snapshotKeepsTimeAndExpiries() {
+        book.advanceTime(60);
+        OrdersBook restored = new OrdersBook(book.snapshot(), true);
+        assertEquals(book.snapshot(), restored.snapshot());
+        assertEquals(60, restored.getTime());
+        restored.advanceTime(100);
+        book.advanceTime(100);
+        assertEquals(book.snapshot(), restored.snapshot());
+        assertEquals(7, restored.queryBestBid());
+    }
+
+    @Test
+    void dispatcherAdvancesTime() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BasicOrderManagement dispatcher = new BasicOrderManagement(new OrdersBook(), new PrintStream(output, true));
+        assertEquals(CommandResult.ACCEPTED, dispatcher.dispatchCommand("u,10,2,bid,20"));
+        assertEquals(CommandResult.ACCEPTED, dispatcher.dispatchCommand("u,9,1,bid,0"));
+        assertEquals(CommandResult.INVALID_TIMESTAMP, dispatcher.dispatchCommand("u,8,1,bid,x"));
+        assertEquals(CommandResult.MISSING_ARGUMENT, dispatcher.dispatchCommand("t"));
+        assertEquals(CommandResult.ACCEPTED, dispatcher.dispatchCommand("t,19"));
+        assertEquals(CommandResult.ACCEPTED, dispatcher.dispatchCommand("q,best_bid"));
+        assertEquals(CommandResult.ACCEPTED, dispatcher.dispatchCommand("t,20"));
+        assertEquals(CommandResult.ACCEPTED, dispatcher.dispatchCommand("q,best_bid"));
+        assertEquals(CommandResult.INVALID_TIMESTAMP, dispatcher.dispatchCommand("t,19"));
+        assertEquals(CommandResult.ORDER_EXPIRED, dispatcher.dispatchCommand("u,10,2,bid,20"));
+        String separator = System.lineSeparator();
+        assertEquals("10,2" + separator + "9,1" + separator, output.toString());
+    }
+
+    @Test
+    void randomExpiriesMatchNaiveScan() {
+        Random random = new Random(7);
+        OrdersBook book = new OrdersBook();
+        List<BasicOrder> orders = new ArrayList<>();
+        long time = 0;
+        for (int step = 0; step < 2000; step++) {
+            if (random.nextInt(4) == 0) {
+                time += random.nextInt(4) == 0 ? random.nextInt(1 << 20) : random.nextInt(100);
+                book.advanceTime(time);
+                final long now = time;
+                orders.removeIf(order -> order.getExpireAt() != 0 && order.getExpireAt() <= now);
+            } else {
+                final boolean bid = random.nextBoolean();
+                final int price = bid ? 1 + random.nextInt(50) : 51 + random.nextInt(50);
+                final long expireAt = random.nextInt(5) == 0 ? 0 : time + 1 + random.nextInt(1 << random.nextInt(21));
+                BasicOrder order = new BasicOrder(price, 1 + random.nextInt(9), bid ? BID : ASK, expireAt);
+                book.addOrder(order);
+                orders.add(order);
+            }
+            for (int price = 1; price <= 100; price += 7) {
+                final int level = price;
+                assertEquals(orders.stream().filter(order -> order.getPrice() == level)
+                                   .mapToInt(BasicOrder::getSize).sum(),
+                             book.querySize(price), "size at " + price + " at step " + step);
+            }
+            assertEquals(orders.stream().filter(order -> order.getSide() == BID)
+                               .mapToInt(BasicOrder::getPrice).max().orElse(0),
+                         book.queryBestBid(), "best bid at step " + step);
+            assertEquals(orders.stream().filter(order -> order.getSide() == ASK)
+                               .mapToInt(BasicOrder::getPrice).min().orElse(0),
+                         book.queryBestAsk(), "best ask at step " + step);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.ASK;
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.BID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrdersBookFillTest {
+
+    private OrdersBook   book;
+    private List<String> fills;
+
+    @BeforeEach
+    void setUp() {
+        book = new OrdersBook();
+        book.addOrder(new BasicOrder(10, 2, ASK));
+        book.addOrder(new BasicOrder(10, 3, ASK));
+        book.addOrder(new BasicOrder(12, 4, ASK));
+        book.addOrder(new BasicOrder(8, 5, BID));
+        book.addOrder(new BasicOrder(7, 2, BID));
+
+        fills = new ArrayList<>();
+        book.setFillListener(( price, quantity, side, remainingSize ) ->
+                                     fills.add(price + "," + quantity + "," + side + "," + remainingSize));
+    }
+
+    @Test
+    void partialFillOfFirstOrder() {
+        book.buy(1);
+        assertEquals("[10,1,ASK,1]", fills.toString());
+    }
+
+    @Test
+    void sweepAcrossLevelsInFifoOrder() {
+        book.buy(6);
+        assertEquals("[10,2,ASK,0, 10,3,ASK,0, 12,1,ASK,3]", fills.toString());
+    }
+
+    @Test
+    void sellConsumesBids() {
+        book.sell(5);
+        assertEquals("[8,5,BID,0]", fills.toString());
+        assertEquals(7, book.queryBestBid());
+    }
+
+    @Test
+    void dealBeyondLiquidityConsumesWholeSide() {
+        book.sell(100);
+        assertEquals("[8,5,BID,0, 7,2,BID,0]", fills.toString());
+        assertEquals(0, book.queryBestBid());
+        book.sell(1);
+        assertEquals(2, fills.size());
+    }
+
+    @Test
+    void noFillsAfterListenerIsRemoved() {
+        book.setFillListener(null);
+        book.buy(3);
+        assertEquals(0, fills.size());
+        assertEquals(2, book.querySize(10));
+    }
+}
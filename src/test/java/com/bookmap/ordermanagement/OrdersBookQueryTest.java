@@ -108,4 +108,18 @@ class OrdersBookQueryTest {
         book.sell(book.querySize(bestBid));
         assertTrue(book.queryBestBid() < bestBid);
     }
-}
\ No newline at end of file
+
+    @Test
+    void statsFollowAddsAndDeals() {
+        book.addOrder(new BasicOrder(10, 4, ASK));
+        book.addOrder(new BasicOrder(12, 2, ASK));
+        book.addOrder(new BasicOrder(4, 3, BID));
+        book.buy(6);
+        BookStats stats = book.getStats();
+        assertEquals(1, stats.getAskSize());
+        assertEquals(1, stats.getAskLevels());
+        assertEquals(4, stats.getBidSize());
+        assertEquals(2, stats.getBidLevels());
+        assertEquals(3, stats.getOrders());
+    }
+}
@@ -0,0 +1,170 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.ASK;
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.BID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OrdersBookStopTest {
+
+    private OrdersBook   book;
+    private List<String> fills;
+
+    @BeforeEach
+    void setUp() {
+        book = new OrdersBook();
+        book.addOrder(new BasicOrder(10, 2, ASK));
+        book.addOrder(new BasicOrder(11, 3, ASK));
+        book.addOrder(new BasicOrder(12, 4, ASK));
+        book.addOrder(new BasicOrder(13, 5, ASK));
+        book.addOrder(new BasicOrder(8, 5, BID));
+        book.addOrder(new BasicOrder(7, 2, BID));
+        book.addOrder(new BasicOrder(6, 3, BID));
+
+        fills = new ArrayList<>();
+        book.setFillListener(( price, quantity, side, remainingSize ) -> fills.add(price + "," + quantity));
+    }
+
+    @Test
+    void buyStopFiresWhenBestAskReachesTrigger() {
+        assertEquals(CommandResult.ACCEPTED, book.tryAddStop(true, 11, 1));
+        book.buy(1);
+        assertEquals(1, book.getStopsCount());
+        book.buy(1);
+        assertEquals("[10,1, 10,1, 11,1]", fills.toString());
+        assertEquals(0, book.getStopsCount());
+        assertEquals(2, book.querySize(11));
+    }
+
+    @Test
+    void sellStopFiresWhenBestBidReachesTrigger() {
+        book.tryAddStop(false, 7, 2);
+        book.sell(5);
+        assertEquals("[8,5, 7,2]", fills.toString());
+        assertEquals(6, book.queryBestBid());
+    }
+
+    @Test
+    void stopsCascadeThroughLevels() {
+        book.tryAddStop(true, 11, 3);
+        book.tryAddStop(true, 12, 4);
+        book.tryAddStop(true, 13, 1);
+        book.buy(2);
+        assertEquals("[10,2, 11,3, 12,4, 13,1]", fills.toString());
+        assertEquals(13, book.queryBestAsk());
+        assertEquals(4, book.querySize(13));
+        assertEquals(0, book.getStopsCount());
+    }
+
+    @Test
+    void stopsWithSameTriggerFireInFifoOrder() {
+        book.tryAddStop(false, 7, 1);
+        book.tryAddStop(false, 7, 4);
+        book.tryAddStop(false, 6, 2);
+        book.sell(0);
+        assertEquals(3, book.getStopsCount());
+        book.buy(1);
+        assertEquals(3, book.getStopsCount());
+        book.sell(5);
+        assertEquals("[10,1, 8,5, 7,1, 7,1, 6,3]", fills.toString());
+        assertEquals(0, book.queryBestBid());
+    }
+
+    @Test
+    void crossedStopIsRejected() {
+        assertEquals(CommandResult.TRIGGER_CROSSED, book.tryAddStop(true, 10, 1));
+        assertEquals(CommandResult.TRIGGER_CROSSED, book.tryAddStop(false, 9, 1));
+        assertEquals(CommandResult.INVALID_PRICE, book.tryAddStop(true, 0, 1));
+        assertEquals(CommandResult.INVALID_SIZE, book.tryAddStop(true, 20, 0));
+        assertEquals(0, book.getStopsCount());
+        assertEquals(2, book.getRejectedCount(CommandResult.TRIGGER_CROSSED));
+    }
+
+    @Test
+    void stopFiresWhenEmptySideGetsOrders() {
+        OrdersBook book = new OrdersBook();
+        book.setFillListener(( price, quantity, side, remainingSize ) -> fills.add(price + "," + quantity));
+        assertEquals(CommandResult.ACCEPTED, book.tryAddStop(true, 10, 3));
+        assertEquals(CommandResult.ACCEPTED, book.tryAddStop(false, 9, 1));
+        book.tryAddOrder(12, 5, ASK);
+        assertEquals(1, book.getStopsCount());
+        assertEquals(2, book.querySize(12));
+        book.tryAddOrders(5, new int[] { 2, 2 }, 0, 2, BID);
+        assertEquals("[12,3, 5,1]", fills.toString());
+        assertEquals(0, book.getStopsCount());
+        assertEquals(3, book.querySize(5));
+        assertEquals(CommandResult.TRIGGER_CROSSED, book.tryAddStop(true, 11, 1));
+    }
+
+    @Test
+    void rejectedStopIsReportedAsStop() {
+        OrdersBook strict = new OrdersBook(false);
+        strict.addOrder(new BasicOrder(10, 2, ASK));
+        strict.addOrder(new BasicOrder(8, 5, BID));
+        CommandRejectedException buy = assertThrows(CommandRejectedException.class,
+                                                    () -> strict.tryAddStop(true, 10, 1));
+        assertEquals(CommandResult.TRIGGER_CROSSED, buy.getResult());
+        assertEquals("Trigger price is already crossed! Buy stop = (10, 1), BestAsk = 10", buy.getMessage());
+        CommandRejectedException sell = assertThrows(CommandRejectedException.class,
+                                                     () -> strict.tryAddStop(false, 9, 3));
+        assertEquals("Trigger price is already crossed! Sell stop = (9, 3), BestBid = 8", sell.getMessage());
+        assertEquals(2, strict.getRejectedCount(CommandResult.TRIGGER_CROSSED));
+    }
+
+    @Test
+    void expiryFiresStops() {
+        book.addOrder(new BasicOrder(9, 1, ASK, 10));
+        book.tryAddStop(true, 10, 2);
+        book.advanceTime(10);
+        assertEquals("[10,2]", fills.toString());
+        assertEquals(11, book.queryBestAsk());
+    }
+
+    @Test
+    void longCascadeRunsWithoutRecursion() {
+        OrdersBook book = new OrdersBook();
+        final int levels = 50_000;
+        for (int price = 1; price <= levels; price++) {
+            book.addOrder(new BasicOrder(levels + price, 1, ASK));
+            book.tryAddStop(true, levels + price + 1, 1);
+        }
+        book.buy(1);
+        assertEquals(0, book.queryBestAsk());
+        assertEquals(1, book.getStopsCount());
+    }
+
+    @Test
+    void snapshotKeepsStops() {
+        book.tryAddStop(true, 12, 1);
+        book.tryAddStop(true, 12, 2);
+        book.tryAddStop(false, 6, 3);
+        OrdersBook restored = new OrdersBook(book.snapshot(), true);
+        assertEquals(book.snapshot(), restored.snapshot());
+        assertEquals(3, restored.getStopsCount());
+        restored.buy(5);
+        book.buy(5);
+        assertEquals(book.snapshot(), restored.snapshot());
+        assertEquals(12, restored.queryBestAsk());
+        assertEquals(1, restored.querySize(12));
+    }
+
+    @Test
+    void dispatcherPlacesStops() {
+        BasicOrderManagement dispatcher = new BasicOrderManagement(book, System.out);
+        assertEquals(CommandResult.ACCEPTED, dispatcher.dispatchCommand("s,buy,11,3"));
+        assertEquals(CommandResult.ACCEPTED, dispatcher.dispatchCommand("s,sell,7,1"));
+        assertEquals(CommandResult.UNKNOWN_OPERATION, dispatcher.dispatchCommand("s,bid,11,3"));
+        assertEquals(CommandResult.MISSING_ARGUMENT, dispatcher.dispatchCommand("s,buy,11"));
+        assertEquals(CommandResult.INVALID_PRICE, dispatcher.dispatchCommand("s,buy,-1,3"));
+        assertEquals(CommandResult.TRIGGER_CROSSED, dispatcher.dispatchCommand("s,sell,8,1"));
+        assertEquals(CommandResult.ACCEPTED, dispatcher.dispatchCommand("o,buy,2"));
+        assertEquals(12, book.queryBestAsk());
+        assertEquals(1, book.getStopsCount());
+    }
+}
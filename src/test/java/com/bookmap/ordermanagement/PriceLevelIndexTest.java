@@ -0,0 +1,67 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PriceLevelIndexTest {
+
+    @Test
+    void pricesAnywhereInIntRange() {
+        PriceLevelIndex index = new PriceLevelIndex();
+        index.update(Integer.MAX_VALUE, 5, 1, 1);
+        index.update(300_000_000, 2, 1, 1);
+        index.update(9, 1, 1, 1);
+        assertEquals(3, index.totalLevels());
+        assertEquals(3, index.sizeUpTo(300_000_000));
+        assertEquals(8, index.sizeUpTo(Integer.MAX_VALUE));
+        assertEquals(Integer.MAX_VALUE, index.priceOfLevel(3));
+        assertEquals(300_000_000, index.lowestPriceWithSizeAbove(1));
+        assertEquals(5L * Integer.MAX_VALUE, index.totalNotional() - index.notionalUpTo(300_000_000));
+        index.update(300_000_000, -2, -1, -1);
+        assertEquals(2, index.totalLevels());
+        assertEquals(Integer.MAX_VALUE, index.priceOfLevel(2));
+    }
+
+    @Test
+    void randomUpdatesMatchNaiveSums() {
+        Random random = new Random(11);
+        PriceLevelIndex index = new PriceLevelIndex(1);
+        TreeMap<Integer, Long> sizes = new TreeMap<>();
+        for (int step = 0; step < 5000; step++) {
+            final int price = random.nextBoolean() ? 1 + random.nextInt(200) : 1 + random.nextInt(Integer.MAX_VALUE);
+            final Long size = sizes.get(price);
+            if (size != null && random.nextBoolean()) {
+                index.update(price, -size, -1, -1);
+                sizes.remove(price);
+            } else {
+                final int added = 1 + random.nextInt(9);
+                index.update(price, added, 1, size == null ? 1 : 0);
+                sizes.merge(price, (long) added, Long::sum);
+            }
+            final int probe = 1 + random.nextInt(step % 2 == 0 ? 200 : Integer.MAX_VALUE);
+            assertEquals(sizes.headMap(probe, true).values().stream().mapToLong(Long::longValue).sum(),
+                         index.sizeUpTo(probe), "size up to " + probe);
+            assertEquals(sizes.size(), index.totalLevels());
+            if (!sizes.isEmpty()) {
+                final int n = 1 + random.nextInt(sizes.size());
+                assertEquals(sizes.keySet().stream().skip(n - 1).findFirst().orElse(0), index.priceOfLevel(n));
+                final long target = (long) (random.nextDouble() * index.totalSize());
+                long cumulative = 0;
+                int expected = 0;
+                for (Map.Entry<Integer, Long> level : sizes.entrySet()) {
+                    cumulative += level.getValue();
+                    if (cumulative > target) {
+                        expected = level.getKey();
+                        break;
+                    }
+                }
+                assertEquals(expected, index.lowestPriceWithSizeAbove(target));
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PriceLevelMapTest {
+
+    @Test
+    void pricesAnywhereInIntRange() {
+        PriceLevelMap<String> map = new PriceLevelMap<>(1);
+        map.put(9, "low");
+        map.put(Integer.MAX_VALUE, "high");
+        assertEquals("low", map.get(9));
+        assertEquals("high", map.get(Integer.MAX_VALUE));
+        assertNull(map.get(0));
+        assertNull(map.get(-9));
+        map.remove(9);
+        assertNull(map.get(9));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void randomUpdatesMatchHashMap() {
+        Random random = new Random(7);
+        PriceLevelMap<Integer> map = new PriceLevelMap<>(1);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int step = 0; step < 50_000; step++) {
+            // clustered prices collide in the table and exercise the shifts on removal
+            final int price = random.nextBoolean() ? 1 + random.nextInt(300) : 1 + random.nextInt(Integer.MAX_VALUE);
+            if (random.nextInt(3) == 0) {
+                map.remove(price);
+                expected.remove(price);
+            } else {
+                map.put(price, step);
+                expected.put(price, step);
+            }
+            final int probe = 1 + random.nextInt(300);
+            assertEquals(expected.get(probe), map.get(probe), "level at " + probe);
+            assertEquals(expected.get(price), map.get(price), "level at " + price);
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Integer, Integer> level : expected.entrySet()) {
+            assertEquals(level.getValue(), map.get(level.getKey()));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.bookmap.ordermanagement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.ASK;
+import static com.bookmap.ordermanagement.BasicOrder.OrderSide.BID;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopOfBookSubscriptionTest {
+
+    private OrdersBook            book;
+    private TopOfBookSubscription subscription;
+
+    @BeforeEach
+    void setUp() {
+        book = new OrdersBook();
+        subscription = book.subscribeTopOfBook();
+    }
+
+    @Test
+    void slowConsumerGetsLatestStateOnly() {
+        assertNull(subscription.poll());
+        book.tryAddOrder(10, 5, BID);
+        book.tryAddOrder(12, 3, ASK);
+        book.tryAddOrder(11, 2, BID);
+        book.sell(1);
+        assertTrue(subscription.hasUpdate());
+        assertEquals(new TopOfBook(11, 1, 12, 3), subscription.poll());
+        assertFalse(subscription.hasUpdate());
+        assertNull(subscription.poll());
+        assertEquals(4, subscription.getPublishedCount());
+    }
+
+    @Test
+    void changesBehindTopAreNotPublished() {
+        book.tryAddOrder(10, 5, BID);
+        assertEquals(new TopOfBook(10, 5, 0, 0), subscription.poll());
+        book.tryAddOrder(9, 5, BID);
+        book.tryAddOrder(10, 5, ASK);
+        assertNull(subscription.poll());
+        assertEquals(1, subscription.getPublishedCount());
+    }
+
+    @Test
+    void newSubscriptionGetsStateWithNextChange() {
+        book.tryAddOrder(10, 5, BID);
+        TopOfBookSubscription late = book.subscribeTopOfBook();
+        assertNull(late.poll());
+        book.tryAddOrder(9, 1, BID);
+        assertEquals(new TopOfBook(10, 5, 0, 0), late.poll());
+        book.unsubscribe(late);
+        book.buy(0);
+        book.tryAddOrder(10, 1, BID);
+        assertNull(late.poll());
+        assertEquals(new TopOfBook(10, 6, 0, 0), subscription.poll());
+    }
+
+    @Test
+    void awaitingConsumerSeesFinalState() throws Exception {
+        final TopOfBook last = new TopOfBook(1000, 1, 1001, 1);
+        CompletableFuture<Integer> consumer = CompletableFuture.supplyAsync(() -> {
+            int updates = 0;
+            try {
+                TopOfBook top;
+                while ((top = subscription.awaitUpdate(10, TimeUnit.SECONDS)) != null) {
+                    updates++;
+                    if (top.getBidPrice() != 0 && top.getAskPrice() != 0)
+                        assertTrue(top.getBidPrice() < top.getAskPrice(), top.toString());
+                    if (top.equals(last)) return updates;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return -1;
+        });
+        for (int price = 1; price <= 1000; price++) {
+            book.tryAddOrder(price + 1, 1, ASK);
+            book.buy(1);
+            book.tryAddOrder(price, 1, BID);
+            if (price < 1000) book.sell(1);
+        }
+        book.tryAddOrder(1001, 1, ASK);
+        int updates = consumer.get(20, TimeUnit.SECONDS);
+        assertTrue(updates > 0 && updates <= subscription.getPublishedCount());
+    }
+}
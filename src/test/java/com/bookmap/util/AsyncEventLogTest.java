@@ -0,0 +1,97 @@
+package com.bookmap.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncEventLogTest {
+
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private       Logger       logger;
+    private final Handler      handler  = new Handler() {
+        @Override
+        public void publish( LogRecord record ) {
+            messages.add(record.getMessage());
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        logger = Logger.getLogger(AsyncEventLogTest.class.getName());
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.removeHandler(handler);
+    }
+
+    @Test
+    void eventsAreLoggedInOrder() {
+        AsyncEventLog log = new AsyncEventLog(logger, Level.INFO, 4,
+                                              ( type, a, b, c, d, e ) -> type + ":" + a + "," + e);
+        for (int i = 0; i < 100; i++) {
+            while (!log.log(i, i * 10, 0, 0, 0, -i)) {
+                Thread.yield();
+            }
+        }
+        log.close();
+        assertEquals(log.getDroppedCount() == 0 ? 100 : 101, messages.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i + ":" + i * 10 + "," + -i, messages.get(i));
+        }
+    }
+
+    @Test
+    void eventsAreDroppedWhenRingIsFull() throws InterruptedException {
+        CountDownLatch formatting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AsyncEventLog log = new AsyncEventLog(logger, Level.INFO, 2, ( type, a, b, c, d, e ) -> {
+            formatting.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return String.valueOf(type);
+        });
+        assertTrue(log.log(0, 0, 0, 0, 0, 0));
+        formatting.await();
+        assertTrue(log.log(1, 0, 0, 0, 0, 0));
+        assertTrue(log.log(2, 0, 0, 0, 0, 0));
+        assertFalse(log.log(3, 0, 0, 0, 0, 0));
+        assertEquals(1, log.getDroppedCount());
+        release.countDown();
+        log.close();
+        assertEquals("[0, 1, 2]", messages.subList(0, 3).toString());
+    }
+
+    @Test
+    void disabledWhenLevelIsNotLoggable() {
+        logger.setLevel(Level.WARNING);
+        try (AsyncEventLog log = new AsyncEventLog(logger, Level.INFO, 2, ( type, a, b, c, d, e ) -> "")) {
+            assertFalse(log.isEnabled());
+        } finally {
+            logger.setLevel(null);
+        }
+    }
+}
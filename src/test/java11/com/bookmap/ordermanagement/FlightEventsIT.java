@@ -0,0 +1,63 @@
+package com.bookmap.ordermanagement;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs against the multi-release jar, so the book emits the events of src/main/java11
+ */
+class FlightEventsIT {
+
+    private static final String DISPATCH = "com.bookmap.ordermanagement.CommandDispatch";
+    private static final String SWEEP    = "com.bookmap.ordermanagement.Sweep";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void dispatchAndSweepAreRecorded() throws IOException {
+        Path file = tempDir.resolve("book.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(DISPATCH).withThreshold(Duration.ZERO);
+            recording.enable(SWEEP).withThreshold(Duration.ZERO);
+            recording.start();
+            BasicOrderManagement dispatcher = new BasicOrderManagement(new OrdersBook(),
+                                                                       new PrintStream(new ByteArrayOutputStream()));
+            dispatcher.dispatchCommand("u,10,2,ask");
+            dispatcher.dispatchCommand("u,11,3,ask");
+            dispatcher.dispatchCommand("q,best_ask");
+            dispatcher.dispatchCommand("o,buy,4");
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+        List<String> dispatches = events.stream()
+                                        .filter(event -> event.getEventType().getName().equals(DISPATCH))
+                                        .map(event -> event.getChar("type") + ":" + event.getString("outcome"))
+                                        .collect(Collectors.toList());
+        assertEquals(List.of("u:ACCEPTED", "u:ACCEPTED", "q:ACCEPTED", "o:ACCEPTED"), dispatches);
+
+        List<RecordedEvent> sweeps = events.stream()
+                                           .filter(event -> event.getEventType().getName().equals(SWEEP))
+                                           .collect(Collectors.toList());
+        assertEquals(1, sweeps.size());
+        assertEquals("ask", sweeps.get(0).getString("side"));
+        assertEquals(4, sweeps.get(0).getInt("filled"));
+        assertEquals(2, sweeps.get(0).getInt("levels"));
+        assertEquals(1, sweeps.get(0).getInt("orders"));
+    }
+}